@@ -0,0 +1,39 @@
+package dev.locations;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Building an announcement from scratch versus reusing the cached one. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AnnouncementBenchmark {
+    private List<Location> locations;
+    private int i;
+
+    @Setup
+    public void setup() {
+        locations = SyntheticLocations.generate(1024, 42);
+    }
+
+    private Location next() {
+        Location l = locations.get(i);
+        i = (i + 1) & 1023;
+        return l;
+    }
+
+    @Benchmark
+    public Announcement build() {
+        return Announcement.of(next());
+    }
+
+    @Benchmark
+    public Announcement cached() {
+        return next().announcement();
+    }
+}
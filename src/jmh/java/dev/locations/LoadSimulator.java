@@ -0,0 +1,354 @@
+package dev.locations;
+
+import net.minecraft.util.Identifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Headless macro harness for the enter detection in the world tick handler.
+ * Drives {@link DetectionScheduler} and {@link RegionDetector} exactly as
+ * {@code END_WORLD_TICK} does, against synthetic players (walking, elytra
+ * flying, teleporting) or a recorded trace, and reports ns/tick,
+ * allocated bytes/tick and announcements.
+ *
+ * <pre>
+ * ./gradlew simulate -Psim.args="--players 500 --regions 20000 --ticks 2400 --verify"
+ *
+ * --players N     synthetic players (default 500)
+ * --regions N     synthetic regions (default 20000)
+ * --layout L      "mixed" overlapping circles and squares, or "nested" with
+ *                 children, grandchildren and height bands (default mixed)
+ * --ticks N       ticks to simulate (default 2400 = 2 minutes)
+ * --interval N    checkIntervalTicks (default 1)
+ * --budget US     tickBudgetMicros, 0 = unlimited (default 0)
+ * --seed N        RNG seed (default 1)
+ * --trace FILE    replay "tick,player,x,z" CSV lines instead of synthetic movement
+ * --parallel N    scan on N threads with ParallelDetection, results one tick late;
+ *                 ns/tick is then the server thread's share only
+ * --hysteresis N  hysteresisBlocks (default 0)
+ * --cooldown N    announcement cooldown in ticks, 0 = none (default 0)
+ * --verify        compare every check against a brute-force list scan; exit 1 on mismatch;
+ *                 needs --hysteresis 0, as the reference has no margin
+ * </pre>
+ * With {@code --verify}, each check's position is also looked up uncached
+ * on the grid, which runs the packed kernel on crowded cells, and compared
+ * with the scan. Run once as is and once built with {@code -Pvector=true}
+ * to hold the scalar and vector kernels to the same reference.
+ */
+public final class LoadSimulator {
+    private static final int WALK = 0, ELYTRA = 1, TELEPORT = 2;
+    // walkers and traced players keep to the ground; elytra and teleports change height
+    private static final int Y = 64;
+
+    private static final class SimPlayer {
+        final UUID id;
+        final int kind;
+        double x, y = Y, z, heading;
+        Location refInside; // brute-force reference for --verify
+
+        SimPlayer(UUID id, int kind, double x, double z, double heading) {
+            this.id = id;
+            this.kind = kind;
+            this.x = x;
+            this.z = z;
+            this.heading = heading;
+        }
+    }
+
+    private int players = 500;
+    private int regions = 20000;
+    private String layout = "mixed";
+    private int ticks = 2400;
+    private int interval = 1;
+    private long budgetNanos;
+    private long seed = 1;
+    private Path trace;
+    private boolean verify;
+    private int parallelThreads = -1;
+    private int hysteresis;
+    private int cooldown;
+
+    private int tick;
+    private long announcements;
+    private long suppressed;
+    private long mismatches;
+    // checks made during the current tick, verified after the timed section
+    private SimPlayer[] checked = new SimPlayer[0];
+    private Location[] results = new Location[0];
+    private int[] checkedXYZ = new int[0];
+    private int checkedCount;
+
+    public static void main(String[] args) throws IOException {
+        LoadSimulator sim = new LoadSimulator();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--players" -> sim.players = Integer.parseInt(args[++i]);
+                case "--regions" -> sim.regions = Integer.parseInt(args[++i]);
+                case "--layout" -> sim.layout = args[++i];
+                case "--ticks" -> sim.ticks = Integer.parseInt(args[++i]);
+                case "--interval" -> sim.interval = Math.max(1, Integer.parseInt(args[++i]));
+                case "--budget" -> sim.budgetNanos = Long.parseLong(args[++i]) * 1000L;
+                case "--seed" -> sim.seed = Long.parseLong(args[++i]);
+                case "--trace" -> sim.trace = Path.of(args[++i]);
+                case "--verify" -> sim.verify = true;
+                case "--parallel" -> sim.parallelThreads = Math.max(0, Integer.parseInt(args[++i]));
+                case "--hysteresis" -> sim.hysteresis = Math.max(0, Integer.parseInt(args[++i]));
+                case "--cooldown" -> sim.cooldown = Math.max(0, Integer.parseInt(args[++i]));
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+        if (!sim.layout.equals("mixed") && !sim.layout.equals("nested")) {
+            System.err.println("Unknown layout: " + sim.layout);
+            System.exit(2);
+        }
+        if (sim.verify && sim.hysteresis > 0) {
+            System.err.println("--verify needs --hysteresis 0");
+            System.exit(2);
+        }
+        sim.run();
+        if (sim.verify && sim.mismatches > 0) System.exit(1);
+    }
+
+    private void run() throws IOException {
+        DimensionSnapshot snapshot = DimensionSnapshot.of(layout.equals("nested")
+                ? SyntheticLocations.nested(regions, seed)
+                : SyntheticLocations.generate(regions, seed));
+        // resolved instances, with parents, as the grid holds them
+        List<Location> locations = snapshot.locations();
+        LocationGrid grid = snapshot.grid();
+        ChunkCandidates chunks = new ChunkCandidates();
+        chunks.sync(grid);
+        int span = layout.equals("nested") ? SyntheticLocations.nestedSpan(regions) : SyntheticLocations.span(regions);
+
+        Map<Integer, List<int[]>> moves = trace == null ? null : readTrace(trace);
+        List<SimPlayer> list = new ArrayList<>();
+        Map<Integer, SimPlayer> byTraceId = new HashMap<>();
+        SplittableRandom rnd = new SplittableRandom(seed);
+        if (moves == null) {
+            for (int i = 0; i < players; i++) {
+                // 70% walkers, 20% elytra, 10% teleporters
+                int roll = rnd.nextInt(10);
+                int kind = roll < 7 ? WALK : roll < 9 ? ELYTRA : TELEPORT;
+                SimPlayer p = new SimPlayer(new UUID(seed, i), kind,
+                        rnd.nextInt(span) - span / 2, rnd.nextInt(span) - span / 2,
+                        rnd.nextDouble(Math.PI * 2));
+                if (kind == ELYTRA) p.y = rnd.nextInt(Y, 200);
+                list.add(p);
+            }
+        }
+
+        RegionDetector detector = new RegionDetector();
+        detector.setHysteresis(hysteresis);
+        Identifier overworld = Identifier.of("minecraft", "overworld");
+        int dimKey = detector.dimensionKey(overworld);
+        ParallelDetection<SimPlayer> parallel = parallelThreads < 0 ? null : new ParallelDetection<>(parallelThreads);
+        DetectionScheduler scheduler = new DetectionScheduler();
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] tickNanos = new long[ticks];
+        long totalAlloc = 0;
+
+        checked = new SimPlayer[Math.max(16, list.size())];
+        results = new Location[checked.length];
+        checkedXYZ = new int[checked.length * 3];
+        for (int t = 0; t < ticks; t++) {
+            tick = t;
+            if (moves == null) {
+                for (SimPlayer p : list) move(p, rnd, span);
+            } else {
+                for (int[] m : moves.getOrDefault(t, List.of())) {
+                    SimPlayer p = byTraceId.computeIfAbsent(m[0], id -> {
+                        SimPlayer np = new SimPlayer(new UUID(0, id), WALK, 0, 0, 0);
+                        list.add(np);
+                        return np;
+                    });
+                    p.x = m[1];
+                    p.z = m[2];
+                }
+            }
+
+            if (checked.length < list.size()) {
+                checked = Arrays.copyOf(checked, list.size() * 2);
+                results = Arrays.copyOf(results, checked.length);
+                checkedXYZ = Arrays.copyOf(checkedXYZ, checked.length * 3);
+            }
+            checkedCount = 0;
+            long alloc0 = mx.getCurrentThreadAllocatedBytes();
+            long t0 = System.nanoTime();
+            if (parallel == null) {
+                scheduler.run(list, interval, budgetNanos, p -> check(detector, dimKey, chunks, p));
+            } else {
+                // as the mod does: last tick's results, this tick's positions, then the scan
+                parallel.apply((b, i) -> record(detector, b, i));
+                ParallelDetection.Batch<SimPlayer> batch = parallel.batch(overworld, dimKey, grid);
+                scheduler.run(list, interval, budgetNanos,
+                        p -> batch.add(p, (int) Math.floor(p.x), (int) Math.floor(p.y), (int) Math.floor(p.z)));
+                parallel.dispatch();
+            }
+            tickNanos[t] = System.nanoTime() - t0;
+            totalAlloc += mx.getCurrentThreadAllocatedBytes() - alloc0;
+            // the rest of a server tick, which the scan overlaps with
+            if (parallel != null) parallel.await();
+            if (verify) {
+                for (int i = 0; i < checkedCount; i++) {
+                    verify(locations, grid, checked[i], checkedXYZ[i * 3], checkedXYZ[i * 3 + 1],
+                            checkedXYZ[i * 3 + 2], results[i]);
+                }
+            }
+        }
+        if (parallel != null) parallel.shutdown();
+
+        report(list.size(), tickNanos, totalAlloc);
+    }
+
+    private void check(RegionDetector detector, int dimKey, ChunkCandidates chunks, SimPlayer p) {
+        int x = (int) Math.floor(p.x), y = (int) Math.floor(p.y), z = (int) Math.floor(p.z);
+        Location entered = detector.check(p.id, dimKey, chunks, x, y, z);
+        checked(detector, p, x, y, z, entered);
+    }
+
+    private void record(RegionDetector detector, ParallelDetection.Batch<SimPlayer> batch, int i) {
+        SimPlayer p = batch.player(i);
+        Location entered = detector.record(p.id, batch.dimensionKey(), batch.grid(), batch.result(i),
+                batch.x(i), batch.y(i), batch.z(i));
+        checked(detector, p, batch.x(i), batch.y(i), batch.z(i), entered);
+    }
+
+    private void checked(RegionDetector detector, SimPlayer p, int x, int y, int z, Location entered) {
+        if (entered != null) {
+            if (detector.announce(entered, tick, cooldown)) announcements++;
+            else suppressed++;
+        }
+        checkedXYZ[checkedCount * 3] = x;
+        checkedXYZ[checkedCount * 3 + 1] = y;
+        checkedXYZ[checkedCount * 3 + 2] = z;
+        checked[checkedCount] = p;
+        results[checkedCount++] = entered;
+    }
+
+    private void verify(List<Location> all, LocationGrid grid, SimPlayer p, int x, int y, int z, Location entered) {
+        // reference: a linear scan, deepest first, then height bounded over
+        // unbounded, then nearest center, then list order
+        Location best = null;
+        long bestKey = Long.MAX_VALUE;
+        for (Location loc : all) {
+            if (!loc.contains(x, y, z)) continue;
+            long key = loc.matchKey(x, z);
+            if (best == null || loc.depth > best.depth
+                    || loc.depth == best.depth && loc.hasHeight() && !best.hasHeight()
+                    || loc.depth == best.depth && loc.hasHeight() == best.hasHeight() && key < bestKey) {
+                bestKey = key;
+                best = loc;
+            }
+        }
+        // stepping back out into a location enclosing the last one is no entry
+        Location was = p.refInside;
+        Location expected = best != null && (was == null || !encloses(best, was)) ? best : null;
+        p.refInside = best;
+        if (expected != entered) mismatch(p, x, y, z, "entered", expected, entered);
+
+        // the same position uncached, through the packed kernel where a cell is crowded
+        Location direct = grid.findBestMatch(x, y, z);
+        if (direct != best) mismatch(p, x, y, z, "uncached match", best, direct);
+    }
+
+    // outer is inner or one of its ancestors, compared by name
+    private static boolean encloses(Location outer, Location inner) {
+        for (Location l = inner; l != null; l = l.parent) {
+            if (l.name.equals(outer.name)) return true;
+        }
+        return false;
+    }
+
+    private void mismatch(SimPlayer p, int x, int y, int z, String what, Location expected, Location got) {
+        mismatches++;
+        if (mismatches <= 10) {
+            System.err.println("Mismatch (" + what + ") for " + p.id + " at " + x + "," + y + "," + z
+                    + ": expected " + (expected == null ? "none" : expected.name)
+                    + ", got " + (got == null ? "none" : got.name));
+        }
+    }
+
+    private static void move(SimPlayer p, SplittableRandom rnd, int span) {
+        switch (p.kind) {
+            case WALK -> {
+                // ~4.3 blocks/s with gentle turns
+                p.heading += (rnd.nextDouble() - 0.5) * 0.3;
+                p.x += Math.cos(p.heading) * 0.215;
+                p.z += Math.sin(p.heading) * 0.215;
+            }
+            case ELYTRA -> {
+                // ~33 blocks/s, mostly straight
+                p.heading += (rnd.nextDouble() - 0.5) * 0.05;
+                p.x += Math.cos(p.heading) * 1.65;
+                p.z += Math.sin(p.heading) * 1.65;
+                p.y = Math.max(40, Math.min(220, p.y + (rnd.nextDouble() - 0.5) * 1.5));
+            }
+            default -> {
+                // stand still, teleport every ~10 s
+                if (rnd.nextInt(200) == 0) {
+                    p.x = rnd.nextInt(span) - span / 2;
+                    p.z = rnd.nextInt(span) - span / 2;
+                    p.y = rnd.nextInt(-64, 256);
+                }
+            }
+        }
+        // wrap so players stay over the regions
+        int half = span / 2;
+        if (p.x < -half) p.x += span;
+        if (p.x >= half) p.x -= span;
+        if (p.z < -half) p.z += span;
+        if (p.z >= half) p.z -= span;
+    }
+
+    private static Map<Integer, List<int[]>> readTrace(Path file) throws IOException {
+        Map<Integer, List<int[]>> byTick = new HashMap<>();
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("tick")) continue;
+                String[] f = line.split(",");
+                int tick = Integer.parseInt(f[0].trim());
+                byTick.computeIfAbsent(tick, k -> new ArrayList<>()).add(new int[] {
+                        Integer.parseInt(f[1].trim()),
+                        (int) Math.floor(Double.parseDouble(f[2].trim())),
+                        (int) Math.floor(Double.parseDouble(f[3].trim()))
+                });
+            }
+        }
+        return byTick;
+    }
+
+    private void report(int playerCount, long[] tickNanos, long totalAlloc) {
+        long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long n : sorted) sum += n;
+        int n = sorted.length;
+        System.out.printf(Locale.ROOT, "players=%d regions=%d layout=%s ticks=%d interval=%d budget=%dus%s%n",
+                playerCount, regions, layout, n, interval, budgetNanos / 1000,
+                parallelThreads < 0 ? "" : " parallel=" + parallelThreads);
+        System.out.println("kernel         " + PackedLocations.describeKernel());
+        if (hysteresis > 0 || cooldown > 0) {
+            System.out.printf(Locale.ROOT, "hysteresis=%d cooldown=%dt%n", hysteresis, cooldown);
+        }
+        System.out.printf(Locale.ROOT, "ns/tick        mean=%d p50=%d p99=%d max=%d%n",
+                sum / Math.max(1, n), sorted[n / 2], sorted[Math.min(n - 1, (int) (n * 0.99))], sorted[n - 1]);
+        System.out.printf(Locale.ROOT, "bytes/tick     mean=%d%n", totalAlloc / Math.max(1, n));
+        System.out.printf(Locale.ROOT, "announcements  total=%d per-tick=%.2f suppressed=%d%n",
+                announcements, announcements / (double) Math.max(1, n), suppressed);
+        if (verify) {
+            System.out.println(mismatches == 0 ? "verify         OK" : "verify         FAILED mismatches=" + mismatches);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package dev.locations;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One dimension's snapshot load and save through LocationsStorage, which is
+ * what a lazy dimension load and the background saver run, in both formats.
+ * Files live in a fresh temp directory per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class PersistenceBenchmark {
+    private static final String DIM = "minecraft:overworld";
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int count;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private Path dir;
+    private LocationsStorage storage;
+    private List<Location> snapshot;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("locations-bench");
+        storage = new LocationsStorage(dir);
+        storage.setBinary("binary".equals(format));
+        snapshot = List.copyOf(SyntheticLocations.generate(count, 42));
+        storage.writeSnapshot(DIM, snapshot);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Benchmark
+    public Object load() throws IOException {
+        return storage.read(DIM);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        storage.writeSnapshot(DIM, snapshot);
+    }
+}
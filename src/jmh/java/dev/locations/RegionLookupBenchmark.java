@@ -0,0 +1,112 @@
+package dev.locations;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one region lookup: the grid-backed findBestMatch, the same with a
+ * per-player RegionCache along a walking path (through the grid cells and
+ * through per-chunk candidate lists), the candidate containment
+ * test on its own, and the old full list scan as a baseline. {@code layers}
+ * stacks every footprint in that many height bands; queries are at y=64.
+ * {@code layout=dense} packs small plots about twenty to a grid cell, where
+ * the packed scan applies (vector with -Pvector=true).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RegionLookupBenchmark {
+    private static final int POINTS = 4096;
+    private static final int Y = 64;
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int count;
+
+    @Param({"1", "3"})
+    public int layers;
+
+    @Param({"mixed", "dense"})
+    public String layout;
+
+    private List<Location> list;
+    private LocationGrid grid;
+    private int[] points;
+    private int[] walk;
+    private final RegionCache cache = new RegionCache();
+    private final ChunkCandidates chunks = new ChunkCandidates();
+    private final RegionCache chunkCache = new RegionCache();
+    private int i;
+
+    @Setup
+    public void setup() {
+        list = layout.equals("dense")
+                ? SyntheticLocations.dense(count * layers, 42)
+                : SyntheticLocations.layered(count, layers, 42);
+        grid = DimensionSnapshot.of(list).grid();
+        chunks.sync(grid);
+        points = layout.equals("dense")
+                ? SyntheticLocations.densePoints(count * layers, POINTS, 7)
+                : SyntheticLocations.points(count, POINTS, 7);
+        // a player walking in a straight line, one block per step
+        walk = new int[POINTS * 2];
+        int x = points[0], z = points[1];
+        for (int k = 0; k < POINTS; k++) {
+            walk[k * 2] = x + k;
+            walk[k * 2 + 1] = z;
+        }
+    }
+
+    private int next() {
+        int k = i;
+        i = (k + 2) & (POINTS * 2 - 1);
+        return k;
+    }
+
+    @Benchmark
+    public Location findBestMatch() {
+        int k = next();
+        return grid.findBestMatch(points[k], Y, points[k + 1]);
+    }
+
+    @Benchmark
+    public Location findBestMatchCachedWalk() {
+        int k = next();
+        return grid.findBestMatch(walk[k], Y, walk[k + 1], cache);
+    }
+
+    @Benchmark
+    public Location findBestMatchChunkWalk() {
+        int k = next();
+        return chunks.findBestMatch(walk[k], Y, walk[k + 1], chunkCache);
+    }
+
+    @Benchmark
+    public void containsCandidates(Blackhole bh) {
+        int k = next();
+        int x = points[k], z = points[k + 1];
+        for (Location l : grid.candidates(x, z)) bh.consume(l.contains(x, Y, z));
+    }
+
+    @Benchmark
+    public Location linearScanBaseline() {
+        int k = next();
+        int x = points[k], z = points[k + 1];
+        Location best = null;
+        long bestKey = Long.MAX_VALUE;
+        for (Location loc : list) {
+            if (!loc.contains(x, Y, z)) continue;
+            long key = loc.matchKey(x, z);
+            if (key < bestKey) {
+                bestKey = key;
+                best = loc;
+            }
+        }
+        return best;
+    }
+}
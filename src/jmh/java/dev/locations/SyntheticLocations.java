@@ -0,0 +1,148 @@
+package dev.locations;
+
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/** Deterministic test data shared by the benchmarks. */
+final class SyntheticLocations {
+    private SyntheticLocations() {}
+
+    /**
+     * Side length of the square area the locations are scattered over. It
+     * grows with the count so density (and overlap) stays about the same.
+     */
+    static int span(int count) {
+        return Math.max(512, (int) Math.sqrt(count) * 160);
+    }
+
+    /** Mixed circles and squares, radius 8..120, many overlapping. */
+    static List<Location> generate(int count, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int span = span(count);
+        List<Location> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            out.add(new Location(
+                    "loc-" + i,
+                    new BlockPos(rnd.nextInt(span) - span / 2, 64, rnd.nextInt(span) - span / 2),
+                    8 + rnd.nextInt(113),
+                    rnd.nextBoolean() ? -1 : rnd.nextInt(0x1000000),
+                    rnd.nextBoolean() ? Location.Shape.CIRCLE : Location.Shape.SQUARE,
+                    rnd.nextInt(4) == 0
+            ));
+        }
+        return out;
+    }
+
+    /**
+     * Small circles and squares, radius 2..9, packed about twenty to a grid
+     * cell, like a town's plots and shops.
+     */
+    static List<Location> dense(int count, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int span = denseSpan(count);
+        List<Location> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            out.add(new Location(
+                    "plot-" + i,
+                    new BlockPos(rnd.nextInt(span) - span / 2, 64, rnd.nextInt(span) - span / 2),
+                    2 + rnd.nextInt(8),
+                    -1,
+                    rnd.nextBoolean() ? Location.Shape.CIRCLE : Location.Shape.SQUARE,
+                    false
+            ));
+        }
+        return out;
+    }
+
+    /**
+     * The same footprints stacked {@code layers} times in disjoint height
+     * bands across the overworld's -64..319, like mines under towns under
+     * sky islands. One layer returns {@link #generate} unchanged.
+     */
+    static List<Location> layered(int count, int layers, long seed) {
+        List<Location> base = generate(count, seed);
+        if (layers <= 1) return base;
+        int band = 384 / layers;
+        List<Location> out = new ArrayList<>(count * layers);
+        for (Location l : base) {
+            for (int k = 0; k < layers; k++) {
+                int minY = -64 + k * band;
+                out.add(l.withName(l.name + "-" + k).withHeight(minY, minY + band - 1));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * {@link #generate}'s footprints squeezed into {@link #nestedSpan}, so
+     * most grid cells are crowded enough for the packed kernel, about half
+     * of them with a child and a
+     * third of those children with a grandchild, nested off-center inside
+     * their parents. Some children are limited to a height band around
+     * y=64 and some to one above it, and a quarter of the roots get an
+     * unnested sibling over the same footprint limited to y=32..96, so
+     * depth, height bounds and center distance all decide some overlaps.
+     */
+    static List<Location> nested(int count, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        List<Location> out = new ArrayList<>();
+        int scale = span(count) / nestedSpan(count);
+        for (Location wide : generate(count, seed)) {
+            Location root = new Location(wide.name, new BlockPos(wide.center.getX() / scale, 64, wide.center.getZ() / scale),
+                    wide.radius, wide.colorRgb, wide.shape, wide.fancy);
+            out.add(root);
+            if (rnd.nextInt(4) == 0) {
+                // a location of its own, not a renamed copy sharing the root's identity
+                out.add(new Location(root.name + "-band", root.center, root.radius, -1, root.shape, false)
+                        .withHeight(32, 96));
+            }
+            if (rnd.nextBoolean()) continue;
+            Location child = inside(root, root.name + "-c", rnd);
+            out.add(child);
+            if (rnd.nextInt(3) == 0) out.add(inside(child, child.name + "-c", rnd));
+        }
+        return out;
+    }
+
+    /** Side length of the area {@link #nested} covers. */
+    static int nestedSpan(int count) {
+        return span(count) / 3;
+    }
+
+    // smaller location around a point inside the parent's bounds, nested under it
+    private static Location inside(Location parent, String name, SplittableRandom rnd) {
+        int r = Math.max(2, parent.radius / 3);
+        int off = Math.max(1, parent.radius - r);
+        Location l = new Location(name,
+                new BlockPos(parent.center.getX() + rnd.nextInt(-off, off + 1), 64,
+                        parent.center.getZ() + rnd.nextInt(-off, off + 1)),
+                r, -1, rnd.nextBoolean() ? Location.Shape.CIRCLE : Location.Shape.SQUARE, false);
+        int band = rnd.nextInt(3);
+        if (band == 1) l = l.withHeight(0, 100);
+        else if (band == 2) l = l.withHeight(100, 200);
+        return l.withParent(parent.name);
+    }
+
+    private static int denseSpan(int count) {
+        return Math.max(64, (int) Math.sqrt(count) * 16);
+    }
+
+    /** Query points as interleaved x, z pairs inside the same area. */
+    static int[] points(int count, int n, long seed) {
+        return points(span(count), n, new SplittableRandom(seed));
+    }
+
+    /** The same over the area of {@link #dense}. */
+    static int[] densePoints(int count, int n, long seed) {
+        return points(denseSpan(count), n, new SplittableRandom(seed));
+    }
+
+    private static int[] points(int span, int n, SplittableRandom rnd) {
+        int[] xz = new int[n * 2];
+        for (int i = 0; i < xz.length; i++) xz[i] = rnd.nextInt(span) - span / 2;
+        return xz;
+    }
+}
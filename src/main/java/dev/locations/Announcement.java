@@ -0,0 +1,49 @@
+package dev.locations;
+
+import net.minecraft.network.packet.s2c.play.OverlayMessageS2CPacket;
+import net.minecraft.network.packet.s2c.play.SubtitleS2CPacket;
+import net.minecraft.network.packet.s2c.play.TitleFadeS2CPacket;
+import net.minecraft.network.packet.s2c.play.TitleS2CPacket;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Style;
+import net.minecraft.text.Text;
+import net.minecraft.text.TextColor;
+
+/**
+ * Prebuilt "Now Entering" payloads for one location. Packets are immutable,
+ * so the same instances are sent to every player crossing the boundary.
+ */
+public final class Announcement {
+    // Center-screen title with fade in/out, same for every location
+    public static final TitleFadeS2CPacket FADE = new TitleFadeS2CPacket(10, 70, 20);
+
+    public final OverlayMessageS2CPacket actionBar;
+    public final TitleS2CPacket title;
+    public final SubtitleS2CPacket subtitle;
+
+    private Announcement(OverlayMessageS2CPacket actionBar, TitleS2CPacket title, SubtitleS2CPacket subtitle) {
+        this.actionBar = actionBar;
+        this.title = title;
+        this.subtitle = subtitle;
+    }
+
+    static Announcement of(Location loc) {
+        int rgb = loc.colorRgb != -1 ? loc.colorRgb : 0xFFFFFF;
+        Style style = Style.EMPTY.withColor(TextColor.fromRgb(rgb));
+
+        // nested locations show their breadcrumb, e.g. "Market District, Aldmoor"
+        MutableText msg = Text.literal("Now Entering ")
+                .append(Text.literal(loc.path()).setStyle(style));
+
+        // underline sized to the name
+        StringBuilder sb = new StringBuilder();
+        int n = Math.max(8, loc.name.length() * 2);
+        for (int i = 0; i < n; i++) sb.append('¯');
+
+        return new Announcement(
+                new OverlayMessageS2CPacket(msg),
+                new TitleS2CPacket(Text.literal(loc.name).setStyle(style)),
+                new SubtitleS2CPacket(Text.literal(sb.toString()))
+        );
+    }
+}
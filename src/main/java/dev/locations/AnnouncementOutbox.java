@@ -0,0 +1,72 @@
+package dev.locations;
+
+import net.minecraft.network.listener.ClientPlayPacketListener;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.network.packet.s2c.play.BundleS2CPacket;
+import net.minecraft.network.packet.s2c.play.PlaySoundS2CPacket;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvents;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the announcements produced during one server tick and sends them
+ * at the end of it. A player keeps only the last location they entered that
+ * tick, and a fancy announcement goes out as one bundle so the client applies
+ * fade, title, subtitle and sound together.
+ */
+public final class AnnouncementOutbox {
+    private final Map<ServerPlayerEntity, Location> pending = new IdentityHashMap<>();
+
+    /** Replaces anything already queued for the player this tick. */
+    public void queue(ServerPlayerEntity p, Location entered) {
+        pending.put(p, entered);
+    }
+
+    public void flush() {
+        if (pending.isEmpty()) return;
+        int sent = 0;
+        for (Map.Entry<ServerPlayerEntity, Location> e : pending.entrySet()) {
+            ServerPlayerEntity p = e.getKey();
+            if (p.isRemoved()) continue;
+            send(p, e.getValue());
+            sent++;
+        }
+        pending.clear();
+        LocationsMetrics.get().recordAnnounced(sent);
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    private static void send(ServerPlayerEntity p, Location current) {
+        Announcement a = current.announcement();
+        if (current.fancy) {
+            try {
+                p.networkHandler.sendPacket(new BundleS2CPacket(List.<Packet<? super ClientPlayPacketListener>>of(
+                    Announcement.FADE,
+                    a.title,
+                    a.subtitle,
+                    // only the sound depends on the player
+                    new PlaySoundS2CPacket(
+                        SoundEvents.AMBIENT_BASALT_DELTAS_MOOD, // the vanilla event
+                        SoundCategory.AMBIENT,                  // or MASTER if you want it louder
+                        p.getX(), p.getY(), p.getZ(),          // play at the player
+                        1.0f,                                   // volume
+                        1.0f,                                   // pitch
+                        p.getRandom().nextLong()                // seed
+                    )
+                )));
+            } catch (Throwable t) {
+                // If mappings ever change, fall back to action bar
+                p.networkHandler.sendPacket(a.actionBar);
+            }
+        } else {
+            p.networkHandler.sendPacket(a.actionBar); // action bar
+        }
+    }
+}
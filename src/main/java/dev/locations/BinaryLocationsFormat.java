@@ -0,0 +1,225 @@
+package dev.locations;
+
+import net.minecraft.util.math.BlockPos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Compact binary snapshot ({@code locations.bin}). Layout, big-endian:
+ * <pre>
+ * int magic 'SLOC', int version
+ * int stringCount, then per string: int byteLength, UTF-8 bytes
+ * int dimCount, then per dimension: int dimString, int recordCount, records,
+ *                    int polygonCount, polygons (version 2+),
+ *                    int parentCount, parents (version 3+),
+ *                    int heightCount, heights (version 4)
+ * record (24 bytes): int x, int y, int z, int radius, int color,
+ *                    int name (string index) | shape << 24 | flags << 28
+ * polygon: int record index, int pointCount, pointCount * (int x, int z)
+ * parent: int record index, int parent name (string index)
+ * height: int record index, int minY, int maxY
+ * </pre>
+ * Older versions, without the later sections, are still read.
+ * Names and dimension ids share one interned string table. Reading maps the
+ * file and builds {@link Location}s straight from the buffer.
+ */
+final class BinaryLocationsFormat {
+    private static final int MAGIC = 0x534C4F43; // "SLOC"
+    private static final int VERSION = 4;
+    private static final int RECORD_BYTES = 24;
+    private static final int NAME_MASK = 0x00FFFFFF;
+    private static final int FLAG_FANCY = 1;
+
+    private BinaryLocationsFormat() {}
+
+    static Map<String, List<Location>> read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < 8 || buf.getInt() != MAGIC) {
+                throw new IOException("not a locations store: " + file);
+            }
+            int version = buf.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("unsupported locations store version " + version);
+            }
+
+            String[] strings = new String[buf.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buf.getInt()];
+                buf.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            Location.Shape[] shapes = Location.Shape.values();
+            Map<String, List<Location>> byDim = new HashMap<>();
+            int dims = buf.getInt();
+            for (int d = 0; d < dims; d++) {
+                String dim = strings[buf.getInt()];
+                int count = buf.getInt();
+                int[] raw = new int[count * 6];
+                for (int i = 0; i < raw.length; i++) raw[i] = buf.getInt();
+                int[][] polygons = new int[count][];
+                if (version >= 2) {
+                    int polyCount = buf.getInt();
+                    for (int p = 0; p < polyCount; p++) {
+                        int record = buf.getInt();
+                        int pointCount = buf.getInt();
+                        if (pointCount > Location.MAX_POLYGON_POINTS) throw new IOException("corrupt polygon in " + file);
+                        int[] points = new int[pointCount * 2];
+                        for (int i = 0; i < points.length; i++) points[i] = buf.getInt();
+                        polygons[record] = points;
+                    }
+                }
+                String[] parents = new String[count];
+                if (version >= 3) {
+                    int parentCount = buf.getInt();
+                    for (int p = 0; p < parentCount; p++) {
+                        int record = buf.getInt();
+                        parents[record] = strings[buf.getInt()];
+                    }
+                }
+                int[] heights = null; // record index -> minY, maxY at 2i, 2i + 1
+                if (version >= 4) {
+                    int heightCount = buf.getInt();
+                    if (heightCount > 0) {
+                        heights = new int[count * 2];
+                        for (int i = 0; i < count; i++) {
+                            heights[2 * i] = Integer.MIN_VALUE;
+                            heights[2 * i + 1] = Integer.MAX_VALUE;
+                        }
+                    }
+                    for (int h = 0; h < heightCount; h++) {
+                        int record = buf.getInt();
+                        heights[2 * record] = buf.getInt();
+                        heights[2 * record + 1] = buf.getInt();
+                    }
+                }
+                List<Location> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int r = i * 6;
+                    int packed = raw[r + 5];
+                    int shape = (packed >>> 24) & 0xF;
+                    int flags = packed >>> 28;
+                    String name = strings[packed & NAME_MASK];
+                    int color = raw[r + 4] == 0 ? -1 : raw[r + 4];
+                    boolean fancy = (flags & FLAG_FANCY) != 0;
+                    Location loc;
+                    if (polygons[i] != null && Location.checkPolygon(polygons[i]) == null) {
+                        loc = Location.polygon(name, raw[r + 1], polygons[i], color, fancy);
+                    } else {
+                        loc = new Location(
+                                name,
+                                new BlockPos(raw[r], raw[r + 1], raw[r + 2]),
+                                raw[r + 3],
+                                color,
+                                shape < shapes.length ? shapes[shape] : Location.Shape.CIRCLE,
+                                fancy
+                        );
+                    }
+                    if (parents[i] != null) loc = loc.withParent(parents[i]);
+                    if (heights != null && (heights[2 * i] != Integer.MIN_VALUE || heights[2 * i + 1] != Integer.MAX_VALUE)) {
+                        loc = loc.withHeight(heights[2 * i], heights[2 * i + 1]);
+                    }
+                    list.add(loc);
+                }
+                byDim.put(dim, list);
+            }
+            return byDim;
+        } catch (RuntimeException e) {
+            // BufferUnderflow / bad index: treat as a corrupt file, not a crash
+            throw new IOException("corrupt locations store " + file + ": " + e, e);
+        }
+    }
+
+    static void write(Path file, Map<String, List<Location>> snapshot) throws IOException {
+        Map<String, Integer> index = new LinkedHashMap<>();
+        int records = 0;
+        for (Map.Entry<String, List<Location>> e : snapshot.entrySet()) {
+            intern(index, e.getKey());
+            for (Location l : e.getValue()) {
+                intern(index, l.name);
+                if (l.parentName != null) intern(index, l.parentName);
+            }
+            records += e.getValue().size();
+        }
+        if (index.size() > NAME_MASK) throw new IOException("too many distinct names for the binary store");
+
+        List<byte[]> encoded = new ArrayList<>(index.size());
+        long size = 12L + 4L + 20L * snapshot.size() + (long) RECORD_BYTES * records;
+        for (List<Location> list : snapshot.values()) {
+            for (Location l : list) {
+                if (l.points != null) size += 8 + 4L * l.points.length;
+                if (l.parentName != null) size += 8;
+                if (l.hasHeight()) size += 12;
+            }
+        }
+        for (String s : index.keySet()) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += 4 + bytes.length;
+        }
+        if (size > Integer.MAX_VALUE) throw new IOException("locations store too large");
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(encoded.size());
+        for (byte[] bytes : encoded) buf.putInt(bytes.length).put(bytes);
+        buf.putInt(snapshot.size());
+        for (Map.Entry<String, List<Location>> e : snapshot.entrySet()) {
+            buf.putInt(index.get(e.getKey())).putInt(e.getValue().size());
+            for (Location l : e.getValue()) {
+                int flags = l.fancy ? FLAG_FANCY : 0;
+                buf.putInt(l.center.getX())
+                   .putInt(l.center.getY())
+                   .putInt(l.center.getZ())
+                   .putInt(l.radius)
+                   .putInt(l.colorRgb)
+                   .putInt(index.get(l.name) | l.shape.ordinal() << 24 | flags << 28);
+            }
+            int polyCount = 0;
+            for (Location l : e.getValue()) if (l.points != null) polyCount++;
+            buf.putInt(polyCount);
+            int record = 0;
+            for (Location l : e.getValue()) {
+                if (l.points != null) {
+                    buf.putInt(record).putInt(l.points.length / 2);
+                    for (int v : l.points) buf.putInt(v);
+                }
+                record++;
+            }
+            int parentCount = 0;
+            for (Location l : e.getValue()) if (l.parentName != null) parentCount++;
+            buf.putInt(parentCount);
+            record = 0;
+            for (Location l : e.getValue()) {
+                if (l.parentName != null) buf.putInt(record).putInt(index.get(l.parentName));
+                record++;
+            }
+            int heightCount = 0;
+            for (Location l : e.getValue()) if (l.hasHeight()) heightCount++;
+            buf.putInt(heightCount);
+            record = 0;
+            for (Location l : e.getValue()) {
+                if (l.hasHeight()) buf.putInt(record).putInt(l.minY).putInt(l.maxY);
+                record++;
+            }
+        }
+        buf.flip();
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(false);
+        }
+    }
+
+    private static void intern(Map<String, Integer> index, String s) {
+        index.putIfAbsent(s, index.size());
+    }
+}
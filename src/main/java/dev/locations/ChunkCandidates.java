@@ -0,0 +1,135 @@
+package dev.locations;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
+import java.util.Arrays;
+
+/**
+ * Per-chunk candidate lists for one dimension: the locations whose outline
+ * reaches into each 16x16 chunk, in grid order, usually none or one. Built
+ * on the first lookup in a chunk and dropped when the chunk unloads, so it
+ * only ever holds loaded chunks players have stood in. Lookups in cells with
+ * only a couple of locations skip it, since the list would be no shorter.
+ * Server thread only.
+ * <p>
+ * {@link #sync} follows the dimension's published grid. An edit drops only
+ * the chunks under the changed location's bounds; a grid rebuilt from
+ * scratch (loading, nesting changes) drops everything.
+ */
+public final class ChunkCandidates {
+    // safety net where nothing unloads chunks, e.g. the headless simulator
+    private static final int MAX_CHUNKS = 1 << 16;
+    // cells with this few locations are scanned directly
+    private static final int SMALL_BUCKET = 2;
+
+    private final Long2ObjectOpenHashMap<Chunk> chunks = new Long2ObjectOpenHashMap<>();
+    private LocationGrid grid = LocationGrid.EMPTY_GRID;
+
+    private static final class Chunk {
+        final Location[] candidates;
+        // blocks past the chunk edge before any other location in the cell starts
+        final long clear;
+        // null unless the list is long enough for the packed kernel
+        final PackedLocations packed;
+
+        Chunk(Location[] candidates, long clear) {
+            this.candidates = candidates;
+            this.clear = clear;
+            this.packed = PackedLocations.pack(candidates);
+        }
+    }
+
+    /** Switches to the dimension's current grid, invalidating what it changed. */
+    public void sync(LocationGrid current) {
+        if (current == grid) return;
+        if (current.lineage == grid.lineage && current.since <= grid.version && current.version > grid.version) {
+            int[] boxes = current.changed;
+            for (int i = 0; i < boxes.length; i += 4) invalidate(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]);
+        } else {
+            chunks.clear();
+        }
+        grid = current;
+    }
+
+    public LocationGrid grid() {
+        return grid;
+    }
+
+    /** Same answer as {@link LocationGrid#findBestMatch(int, int, int, RegionCache)} on the synced grid. */
+    public Location findBestMatch(int x, int y, int z, RegionCache cache) {
+        if (cache.isFresh(grid, x, y, z)) return cache.result();
+        Location[] bucket = grid.candidates(x, z);
+        if (bucket.length <= SMALL_BUCKET) {
+            // already as short as a chunk list would be
+            return grid.match(x, y, z, bucket, LocationGrid.edgeGap(x, z, LocationGrid.CELL_SHIFT), cache);
+        }
+        Chunk chunk = chunk(x, z);
+        // the answer holds until the player leaves the chunk and then gets near
+        // another location, and never past the cell the bucket covers
+        long reach = Math.max(LocationGrid.edgeGap(x, z, 4), chunk.clear);
+        long gap = Math.min(LocationGrid.edgeGap(x, z, LocationGrid.CELL_SHIFT), reach);
+        if (chunk.packed != null) return grid.scan(chunk.packed, x, y, z, gap, cache);
+        return grid.match(x, y, z, chunk.candidates, gap, cache);
+    }
+
+    /** Locations reaching into the chunk containing (x, z). Never null, do not modify. */
+    public Location[] candidates(int x, int z) {
+        return chunk(x, z).candidates;
+    }
+
+    private Chunk chunk(int x, int z) {
+        int cx = x >> 4, cz = z >> 4;
+        long key = LocationGrid.key(cx, cz);
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = build(cx, cz);
+            if (chunks.size() >= MAX_CHUNKS) chunks.clear();
+            chunks.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    private Chunk build(int cx, int cz) {
+        // a chunk lies inside one grid cell, so that bucket has every candidate
+        Location[] bucket = grid.candidates(cx << 4, cz << 4);
+        Location[] out = null;
+        int n = 0;
+        long clear = Long.MAX_VALUE;
+        for (Location loc : bucket) {
+            if (!loc.overlapsChunk(cx, cz)) {
+                clear = Math.min(clear, loc.chunkClearance(cx, cz));
+                continue;
+            }
+            if (out == null) out = new Location[bucket.length];
+            out[n++] = loc;
+        }
+        return new Chunk(n == 0 ? LocationGrid.EMPTY : Arrays.copyOf(out, n), clear);
+    }
+
+    /** Drops a chunk's list, e.g. when the chunk unloads. */
+    public void unload(int chunkX, int chunkZ) {
+        chunks.remove(LocationGrid.key(chunkX, chunkZ));
+    }
+
+    /** Cached chunks. */
+    public int size() {
+        return chunks.size();
+    }
+
+    private void invalidate(int minX, int minZ, int maxX, int maxZ) {
+        int cx0 = minX >> 4, cz0 = minZ >> 4, cx1 = maxX >> 4, cz1 = maxZ >> 4;
+        if ((long) (cx1 - cx0 + 1) * (cz1 - cz0 + 1) <= chunks.size()) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int cz = cz0; cz <= cz1; cz++) chunks.remove(LocationGrid.key(cx, cz));
+            }
+            return;
+        }
+        // fewer cached chunks than the bounds cover: walk the cache instead
+        for (LongIterator it = chunks.keySet().iterator(); it.hasNext(); ) {
+            long key = it.nextLong();
+            int cx = (int) (key >> 32), cz = (int) key;
+            if (cx >= cx0 && cx <= cx1 && cz >= cz0 && cz <= cz1) it.remove();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package dev.locations;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Round-robin work spreader for one world. Every tick it checks roughly
+ * {@code size / interval} players, continuing where the previous tick
+ * stopped, and gives up early once the time budget is spent. Unfinished
+ * work is carried into the next tick so every player is still visited.
+ */
+public final class DetectionScheduler {
+    private int cursor;
+    private int backlog;
+
+    /** Returns how many items were checked this tick. */
+    public <T> int run(List<T> items, int interval, long budgetNanos, Consumer<? super T> check) {
+        int n = items.size();
+        if (n == 0) {
+            cursor = 0;
+            backlog = 0;
+            return 0;
+        }
+        int quota = Math.min(n, backlog + (n + interval - 1) / interval);
+        long start = System.nanoTime();
+        int done = 0;
+        while (done < quota) {
+            if (cursor >= n) cursor = 0;
+            check.accept(items.get(cursor++));
+            done++;
+            // always make progress, even if a single check blows the budget
+            if (budgetNanos > 0 && System.nanoTime() - start >= budgetNanos) break;
+        }
+        backlog = quota - done;
+        return done;
+    }
+}
@@ -0,0 +1,196 @@
+package dev.locations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of one dimension's locations: the ordered list, the name
+ * index and the spatial grid, always consistent with each other. Safe to
+ * read from any thread; changes produce a new snapshot, copying the list,
+ * name index and grid cell map, so an edit costs O(n). Parent names are
+ * resolved here, so every location's {@link Location#parent} is the instance
+ * in this snapshot.
+ */
+public final class DimensionSnapshot {
+    public static final DimensionSnapshot EMPTY =
+            new DimensionSnapshot(List.of(), Map.of(), LocationGrid.EMPTY_GRID, Map.of(), false);
+
+    private final List<Location> locations;
+    private final Map<String, Location> byName;
+    private final LocationGrid grid;
+    // name key -> how many locations name it as their parent
+    private final Map<String, Integer> parentRefs;
+    // parent names form a cycle, broken depending on list order, so edits rebuild
+    private final boolean cyclic;
+
+    private DimensionSnapshot(List<Location> locations, Map<String, Location> byName, LocationGrid grid,
+                              Map<String, Integer> parentRefs, boolean cyclic) {
+        this.locations = locations;
+        this.byName = byName;
+        this.grid = grid;
+        this.parentRefs = parentRefs;
+        this.cyclic = cyclic;
+    }
+
+    /** Builds a snapshot in one pass; a later case-insensitive duplicate replaces an earlier one in its place. */
+    public static DimensionSnapshot of(Collection<Location> locations) {
+        LinkedHashMap<String, Location> byName = new LinkedHashMap<>();
+        for (Location l : locations) byName.put(Location.nameKey(l.name), l);
+        boolean cyclic = resolve(byName);
+        List<Location> list = List.copyOf(byName.values());
+        Map<String, Integer> parentRefs = new HashMap<>();
+        for (Location l : list) {
+            if (l.parentName != null) parentRefs.merge(Location.nameKey(l.parentName), 1, Integer::sum);
+        }
+        return new DimensionSnapshot(list, Collections.unmodifiableMap(byName), LocationGrid.of(list),
+                Collections.unmodifiableMap(parentRefs), cyclic);
+    }
+
+    // Points every location at its parent's instance, parents first. A missing
+    // parent, a cycle or a chain past MAX_DEPTH leaves the location a root.
+    // Returns true if there was a cycle.
+    private static boolean resolve(LinkedHashMap<String, Location> byName) {
+        boolean nested = false;
+        for (Location l : byName.values()) {
+            if (l.parentName != null || l.parent != null) {
+                nested = true;
+                break;
+            }
+        }
+        if (!nested) return false;
+        Map<String, Location> done = new HashMap<>();
+        Set<String> visiting = new HashSet<>();
+        boolean[] cyclic = new boolean[1];
+        for (String key : byName.keySet()) resolve(key, byName, done, visiting, cyclic);
+        byName.replaceAll((k, l) -> done.get(k));
+        return cyclic[0];
+    }
+
+    private static Location resolve(String key, Map<String, Location> byName, Map<String, Location> done,
+                                    Set<String> visiting, boolean[] cyclic) {
+        Location r = done.get(key);
+        if (r != null) return r;
+        Location l = byName.get(key);
+        Location parent = null;
+        if (l.parentName != null) {
+            String parentKey = Location.nameKey(l.parentName);
+            if (byName.containsKey(parentKey) && visiting.add(key)) {
+                if (!visiting.contains(parentKey)) {
+                    parent = resolve(parentKey, byName, done, visiting, cyclic);
+                    if (parent.depth >= Location.MAX_DEPTH) parent = null;
+                } else if (!parentKey.equals(key)) {
+                    // naming itself is order independent; a longer loop is not
+                    cyclic[0] = true;
+                }
+                visiting.remove(key);
+            }
+        }
+        r = l.resolved(parent);
+        done.put(key, r);
+        return r;
+    }
+
+    /** Insertion-ordered, unmodifiable. */
+    public List<Location> locations() {
+        return locations;
+    }
+
+    public boolean isEmpty() {
+        return locations.isEmpty();
+    }
+
+    public Location find(String name) {
+        return byName.get(Location.nameKey(name));
+    }
+
+    public LocationGrid grid() {
+        return grid;
+    }
+
+    /** Copy with {@code loc} appended, or in place of the location of the same name. */
+    DimensionSnapshot with(Location loc) {
+        return replace(find(loc.name), loc);
+    }
+
+    /**
+     * Copy with the location named {@code oldName} replaced in place by
+     * {@code renamed}, and its children named after the new parent where they
+     * stand, so list order and tie-breaks are kept. This snapshot if there is
+     * no such location.
+     */
+    DimensionSnapshot rename(String oldName, Location renamed) {
+        Location old = find(oldName);
+        if (old == null) return this;
+        if (!isParent(old)) return replace(old, renamed);
+        String oldKey = Location.nameKey(old.name);
+        List<Location> list = new ArrayList<>(locations.size());
+        for (Location l : locations) {
+            if (l == old) l = renamed;
+            else if (l.parentName != null && Location.nameKey(l.parentName).equals(oldKey)) l = l.withParent(renamed.name);
+            list.add(l);
+        }
+        return of(list);
+    }
+
+    /** Copy without the named location, or this snapshot if there is none. */
+    DimensionSnapshot without(String name) {
+        Location old = find(name);
+        return old == null ? this : replace(old, null);
+    }
+
+    private DimensionSnapshot replace(Location removed, Location added) {
+        List<Location> list = new ArrayList<>(locations.size() + 1);
+        // an edit keeps the location's place in the list, which breaks ties
+        int at = -1;
+        for (Location l : locations) {
+            if (l == removed) at = list.size();
+            else list.add(l);
+        }
+        if (at < 0) at = list.size();
+        if (added != null) list.add(at, added);
+        // a location others name as parent: their links, depths and ranks all follow it, so rebuild;
+        // so does a location moved in place, as the grid can only put it back where it was
+        if (cyclic || (removed != null && isParent(removed)) || (added != null && isParent(added))
+                || (removed != null && added != null && !LocationGrid.sameBounds(removed, added))) return of(list);
+
+        // otherwise only the edited location itself needs resolving
+        LinkedHashMap<String, Location> names = new LinkedHashMap<>(byName);
+        if (removed != null) names.remove(Location.nameKey(removed.name));
+        if (added != null) {
+            added = added.resolved(parentOf(added, names));
+            list.set(at, added);
+            names.put(Location.nameKey(added.name), added);
+        }
+        Map<String, Integer> refs = parentRefs;
+        String removedParent = removed == null ? null : removed.parentName;
+        String addedParent = added == null ? null : added.parentName;
+        if (removedParent != null || addedParent != null) {
+            refs = new HashMap<>(parentRefs);
+            if (removedParent != null) refs.computeIfPresent(Location.nameKey(removedParent), (k, n) -> n > 1 ? n - 1 : null);
+            if (addedParent != null) refs.merge(Location.nameKey(addedParent), 1, Integer::sum);
+            refs = Collections.unmodifiableMap(refs);
+        }
+        return new DimensionSnapshot(Collections.unmodifiableList(list),
+                Collections.unmodifiableMap(names), grid.update(removed, added), refs, false);
+    }
+
+    private boolean isParent(Location loc) {
+        return parentRefs.containsKey(Location.nameKey(loc.name));
+    }
+
+    // as resolve() would for a location nobody names as parent: no cycle can run through it
+    private static Location parentOf(Location loc, Map<String, Location> names) {
+        if (loc.parentName == null) return null;
+        String key = Location.nameKey(loc.parentName);
+        if (key.equals(Location.nameKey(loc.name))) return null;
+        Location parent = names.get(key);
+        return parent == null || parent.depth >= Location.MAX_DEPTH ? null : parent;
+    }
+}
@@ -2,9 +2,26 @@ package dev.locations;
 
 import net.minecraft.util.math.BlockPos;
 
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
 public final class Location {
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    // Identity for the running server, never 0. Edits made through the with*
+    // copies keep it, so a renamed location is still the one a player is in.
+    public final long id;
     public final boolean fancy;
-    public enum Shape { CIRCLE, SQUARE }
+    public enum Shape { CIRCLE, SQUARE, POLYGON }
+
+    // deepest nesting followed by a parent chain; links below it are ignored
+    public static final int MAX_DEPTH = 8;
+    public static final int MAX_POLYGON_POINTS = 256;
+    // widest polygon side in blocks; widened to whole chunks that is up to 129
+    // chunks a side, so the mask stays under 537 KiB (520 KiB of bits, 16 KiB of chunk flags)
+    public static final int MAX_POLYGON_SPAN = 2048;
 
     public final String name;
     public final BlockPos center;
@@ -12,6 +29,20 @@ public final class Location {
     // -1 means default color
     public final int colorRgb;
     public final Shape shape;
+    // polygon only: vertices as x0, z0, x1, z1, ... and their rasterized mask
+    final int[] points;
+    private final PolygonMask mask;
+    // name of the enclosing location in the same dimension, or null; persisted
+    public final String parentName;
+    // parentName resolved by the owning DimensionSnapshot, null for a root
+    public final Location parent;
+    // 0 for a root, parent.depth + 1 otherwise; deeper locations win overlaps
+    public final int depth;
+    // inclusive vertical bounds; MIN_VALUE/MAX_VALUE when the location spans all heights
+    public final int minY;
+    public final int maxY;
+    // built on first entry; edits create a new Location, so this never goes stale
+    private Announcement announcement;
 
     public Location(String name, BlockPos center, int radius) {
         this(name, center, radius, -1, Shape.CIRCLE, false);
@@ -26,11 +57,298 @@ public final class Location {
     }
 
     public Location(String name, BlockPos center, int radius, int colorRgb, Shape shape, boolean fancy) {
+        this(NEXT_ID.incrementAndGet(), name, center, radius, colorRgb,
+                shape == null || shape == Shape.POLYGON ? Shape.CIRCLE : shape, fancy, null, null);
+    }
+
+    private Location(long id, String name, BlockPos center, int radius, int colorRgb, Shape shape, boolean fancy,
+                     int[] points, PolygonMask mask) {
+        this.id = id;
         this.name = name;
         this.center = center;
         this.radius = radius;
         this.colorRgb = colorRgb;
-        this.shape = shape == null ? Shape.CIRCLE : shape;
+        this.shape = shape;
+        this.fancy = fancy;
+        this.points = points;
+        this.mask = mask;
+        this.parentName = null;
+        this.parent = null;
+        this.depth = 0;
+        this.minY = Integer.MIN_VALUE;
+        this.maxY = Integer.MAX_VALUE;
+    }
+
+    // copy keeping identity and horizontal geometry
+    private Location(Location from, String name, int colorRgb, boolean fancy, String parentName, Location parent,
+                     int minY, int maxY) {
+        this.id = from.id;
+        this.name = name;
+        this.center = from.center;
+        this.radius = from.radius;
+        this.colorRgb = colorRgb;
+        this.shape = from.shape;
         this.fancy = fancy;
+        this.points = from.points;
+        this.mask = from.mask;
+        this.parentName = parentName;
+        this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    // exact copy under another identity
+    private Location(long id, Location from) {
+        this.id = id;
+        this.name = from.name;
+        this.center = from.center;
+        this.radius = from.radius;
+        this.colorRgb = from.colorRgb;
+        this.shape = from.shape;
+        this.fancy = from.fancy;
+        this.points = from.points;
+        this.mask = from.mask;
+        this.parentName = from.parentName;
+        this.parent = from.parent;
+        this.depth = from.depth;
+        this.minY = from.minY;
+        this.maxY = from.maxY;
+    }
+
+    /**
+     * A polygon through the given vertices ({@code x0, z0, x1, z1, ...}),
+     * rasterized here once. The center is the middle of its bounds at height
+     * {@code y}, the radius half its larger side.
+     */
+    public static Location polygon(String name, int y, int[] points, int colorRgb, boolean fancy) {
+        String error = checkPolygon(points);
+        if (error != null) throw new IllegalArgumentException(error);
+        int[] copy = points.clone();
+        PolygonMask mask = new PolygonMask(copy);
+        BlockPos center = new BlockPos((mask.minX + mask.maxX) >> 1, y, (mask.minZ + mask.maxZ) >> 1);
+        int radius = Math.max(1, (Math.max(mask.maxX - mask.minX, mask.maxZ - mask.minZ) + 1) / 2);
+        return new Location(NEXT_ID.incrementAndGet(), name, center, radius, colorRgb, Shape.POLYGON, fancy, copy, mask);
+    }
+
+    /** Why the vertices can't make a polygon, or null if they can. */
+    public static String checkPolygon(int[] points) {
+        if (points == null || points.length % 2 != 0 || points.length < 6) return "A polygon needs at least 3 points.";
+        if (points.length > 2 * MAX_POLYGON_POINTS) return "A polygon can have at most " + MAX_POLYGON_POINTS + " points.";
+        int x0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, z0 = Integer.MAX_VALUE, z1 = Integer.MIN_VALUE;
+        for (int i = 0; i < points.length; i += 2) {
+            x0 = Math.min(x0, points[i]);
+            x1 = Math.max(x1, points[i]);
+            z0 = Math.min(z0, points[i + 1]);
+            z1 = Math.max(z1, points[i + 1]);
+        }
+        if ((long) x1 - x0 >= MAX_POLYGON_SPAN || (long) z1 - z0 >= MAX_POLYGON_SPAN) {
+            return "A polygon can span at most " + MAX_POLYGON_SPAN + " blocks.";
+        }
+        return null;
+    }
+
+    /** Number of polygon vertices, 0 for other shapes. */
+    public int pointCount() {
+        return points == null ? 0 : points.length / 2;
+    }
+
+    public Location withName(String name) {
+        return new Location(this, name, colorRgb, fancy, parentName, parent, minY, maxY);
+    }
+
+    public Location withColor(int colorRgb) {
+        return new Location(this, name, colorRgb, fancy, parentName, parent, minY, maxY);
+    }
+
+    public Location withFancy(boolean fancy) {
+        return new Location(this, name, colorRgb, fancy, parentName, parent, minY, maxY);
+    }
+
+    /** Copy nested under the named location, or a root if null. Resolved when added to a dimension. */
+    public Location withParent(String parentName) {
+        return new Location(this, name, colorRgb, fancy, parentName, null, minY, maxY);
+    }
+
+    /**
+     * Copy limited to {@code minY..maxY} (inclusive), so a square becomes a box
+     * and a circle a cylinder. Pass MIN_VALUE/MAX_VALUE to span all heights.
+     */
+    public Location withHeight(int minY, int maxY) {
+        if (minY > maxY) throw new IllegalArgumentException("minY above maxY");
+        return new Location(this, name, colorRgb, fancy, parentName, parent, minY, maxY);
+    }
+
+    /** True if the location has a floor or ceiling. */
+    public boolean hasHeight() {
+        return minY != Integer.MIN_VALUE || maxY != Integer.MAX_VALUE;
+    }
+
+    // copy pointing at the resolved parent; this if nothing changed
+    Location resolved(Location parent) {
+        return parent == this.parent ? this : new Location(this, name, colorRgb, fancy, parentName, parent, minY, maxY);
+    }
+
+    /** True if this is {@code other} or nested somewhere inside it. */
+    public boolean isWithin(Location other) {
+        for (Location l = this; l != null; l = l.parent) {
+            if (l.id == other.id) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copy taking over {@code live}'s identity, so a location read back from
+     * disk counts as the same one players are already in.
+     */
+    Location asEditOf(Location live) {
+        return live.id == id ? this : new Location(live.id, this);
+    }
+
+    /** True if both would be saved the same, ignoring identity and the resolved parent. */
+    public boolean sameData(Location other) {
+        return name.equals(other.name)
+                && center.getX() == other.center.getX()
+                && center.getY() == other.center.getY()
+                && center.getZ() == other.center.getZ()
+                && radius == other.radius
+                && colorRgb == other.colorRgb
+                && shape == other.shape
+                && fancy == other.fancy
+                && Arrays.equals(points, other.points)
+                && Objects.equals(parentName, other.parentName)
+                && minY == other.minY
+                && maxY == other.maxY;
+    }
+
+    /** Breadcrumb from this location out to its root, e.g. "Market District, Aldmoor". */
+    public String path() {
+        if (parent == null) return name;
+        StringBuilder sb = new StringBuilder(name);
+        for (Location l = parent; l != null; l = l.parent) sb.append(", ").append(l.name);
+        return sb.toString();
+    }
+
+    /** Cached announcement payloads, built lazily on first use. */
+    public Announcement announcement() {
+        Announcement a = announcement;
+        if (a == null) {
+            // racing builders produce equal values; final fields make either safe to share
+            a = Announcement.of(this);
+            announcement = a;
+        }
+        return a;
+    }
+
+    /** Normalized form used to index names; lookups are case-insensitive. */
+    public static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    public int minX() { return mask != null ? mask.minX : center.getX() - radius; }
+    public int maxX() { return mask != null ? mask.maxX : center.getX() + radius; }
+    public int minZ() { return mask != null ? mask.minZ : center.getZ() - radius; }
+    public int maxZ() { return mask != null ? mask.maxZ : center.getZ() + radius; }
+
+    public boolean contains(int x, int y, int z) {
+        return y >= minY && y <= maxY && contains(x, z);
+    }
+
+    /** Whether the column at (x, z) is inside, ignoring the vertical bounds. */
+    public boolean contains(int x, int z) {
+        if (mask != null) return mask.contains(x, z);
+        long dx = x - center.getX();
+        long dz = z - center.getZ();
+        if (shape == Shape.SQUARE) {
+            return Math.abs(dx) <= radius && Math.abs(dz) <= radius;
+        }
+        long r2 = (long) radius * (long) radius;
+        return dx * dx + dz * dz <= r2;
+    }
+
+    /** Whether the position is inside or at most {@code blocks} blocks outside. */
+    public boolean near(int x, int y, int z, int blocks) {
+        if ((long) y < (long) minY - blocks || (long) y > (long) maxY + blocks) return false;
+        if (mask != null) {
+            if (x < minX() - blocks || x > maxX() + blocks || z < minZ() - blocks || z > maxZ() + blocks) return false;
+            for (int dx = -blocks; dx <= blocks; dx++) {
+                for (int dz = -blocks; dz <= blocks; dz++) {
+                    if (mask.contains(x + dx, z + dz)) return true;
+                }
+            }
+            return false;
+        }
+        long dx = Math.abs((long) x - center.getX());
+        long dz = Math.abs((long) z - center.getZ());
+        long r = (long) radius + blocks;
+        if (shape == Shape.SQUARE) return dx <= r && dz <= r;
+        return dx * dx + dz * dz <= r * r;
+    }
+
+    /** Whether any column of the 16x16 chunk is inside, ignoring the vertical bounds. */
+    public boolean overlapsChunk(int chunkX, int chunkZ) {
+        int x0 = chunkX << 4, z0 = chunkZ << 4;
+        if (maxX() < x0 || minX() > x0 + 15 || maxZ() < z0 || minZ() > z0 + 15) return false;
+        if (mask != null) return mask.overlapsChunk(chunkX, chunkZ);
+        if (shape == Shape.SQUARE) return true;
+        // column of the chunk nearest the center
+        long dx = Math.max(0, Math.max((long) x0 - center.getX(), (long) center.getX() - (x0 + 15)));
+        long dz = Math.max(0, Math.max((long) z0 - center.getZ(), (long) center.getZ() - (z0 + 15)));
+        return dx * dx + dz * dz <= (long) radius * radius;
+    }
+
+    // For a location outside the chunk: how far a position inside the chunk can
+    // move without reaching it. Conservative, like boundaryGap.
+    long chunkClearance(int chunkX, int chunkZ) {
+        int x0 = chunkX << 4, z0 = chunkZ << 4;
+        double d;
+        if (mask == null && shape == Shape.CIRCLE) {
+            long dx = Math.max(0, Math.max((long) x0 - center.getX(), (long) center.getX() - (x0 + 15)));
+            long dz = Math.max(0, Math.max((long) z0 - center.getZ(), (long) center.getZ() - (z0 + 15)));
+            d = Math.sqrt((double) (dx * dx + dz * dz)) - radius;
+        } else {
+            long dx = Math.max(0, Math.max((long) minX() - (x0 + 15), (long) x0 - maxX()));
+            long dz = Math.max(0, Math.max((long) minZ() - (z0 + 15), (long) z0 - maxZ()));
+            d = Math.sqrt((double) (dx * dx + dz * dz));
+        }
+        return Math.max(0, (long) Math.ceil(d - 1e-9) - 1);
+    }
+
+    // Ranking key for overlapping matches, smaller is better:
+    // squared distance for circles and polygons, chebyshev distance for squares.
+    public long matchKey(int x, int z) {
+        long dx = x - center.getX();
+        long dz = z - center.getZ();
+        if (shape == Shape.SQUARE) {
+            return Math.max(Math.abs(dx), Math.abs(dz));
+        }
+        return dx * dx + dz * dz;
+    }
+
+    // How far (in blocks) a position can move before it could cross this
+    // location's boundary in either direction. Conservative, never too large.
+    public long boundaryGap(int x, int y, int z) {
+        long gap = boundaryGap(x, z);
+        if (!hasHeight()) return gap;
+        long vertical = y < minY ? (long) minY - y - 1
+                : y > maxY ? (long) y - maxY - 1
+                : Math.min((long) y - minY, (long) maxY - y);
+        return Math.min(gap, vertical);
+    }
+
+    // the same for the column only
+    private long boundaryGap(int x, int z) {
+        if (mask != null) return mask.boundaryGap(x, z);
+        long dx = Math.abs((long) x - center.getX());
+        long dz = Math.abs((long) z - center.getZ());
+        if (shape == Shape.SQUARE) {
+            long c = Math.max(dx, dz);
+            return c <= radius ? radius - c : c - radius - 1;
+        }
+        double d = Math.sqrt((double) (dx * dx + dz * dz));
+        long gap = d <= radius
+                ? (long) Math.floor(radius - d - 1e-9)
+                : (long) Math.ceil(d - radius - 1e-9) - 1;
+        return Math.max(0, gap);
     }
 }
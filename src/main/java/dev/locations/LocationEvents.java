@@ -0,0 +1,60 @@
+package dev.locations;
+
+import net.fabricmc.fabric.api.event.Event;
+import net.fabricmc.fabric.api.event.EventFactory;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+/**
+ * Region events for other mods, fired from this mod's own detection so the
+ * containment test is paid for once. They run on the server thread inside
+ * the world tick, at the player's check cadence ({@code checkIntervalTicks}),
+ * and count against {@code tickBudgetMicros}, so listeners should be cheap.
+ * Listeners are held in Fabric's array-backed events: registering copies the
+ * array once, and firing loops over it without allocating.
+ *
+ * <pre>
+ * LocationEvents.ENTER.register((player, location) -> ...);
+ * </pre>
+ */
+public final class LocationEvents {
+    private LocationEvents() {}
+
+    /** A player moved into a location, or was first seen inside it. */
+    public static final Event<Enter> ENTER = EventFactory.createArrayBacked(Enter.class,
+            (player, location) -> {},
+            listeners -> (player, location) -> {
+                for (Enter l : listeners) l.onEnter(player, location);
+            });
+
+    /**
+     * A player left a location: walked out, walked into a different one,
+     * changed dimension or disconnected. Also fires if the location was removed.
+     */
+    public static final Event<Exit> EXIT = EventFactory.createArrayBacked(Exit.class,
+            (player, location) -> {},
+            listeners -> (player, location) -> {
+                for (Exit l : listeners) l.onExit(player, location);
+            });
+
+    /** A player is still inside the location they entered earlier; fired on each later check. */
+    public static final Event<Dwell> DWELL = EventFactory.createArrayBacked(Dwell.class,
+            (player, location) -> {},
+            listeners -> (player, location) -> {
+                for (Dwell l : listeners) l.onDwell(player, location);
+            });
+
+    @FunctionalInterface
+    public interface Enter {
+        void onEnter(ServerPlayerEntity player, Location location);
+    }
+
+    @FunctionalInterface
+    public interface Exit {
+        void onExit(ServerPlayerEntity player, Location location);
+    }
+
+    @FunctionalInterface
+    public interface Dwell {
+        void onDwell(ServerPlayerEntity player, Location location);
+    }
+}
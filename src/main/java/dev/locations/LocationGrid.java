@@ -0,0 +1,344 @@
+package dev.locations;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uniform XZ grid over one dimension's locations. Each cell holds the
+ * locations whose bounds overlap it, in insertion order, so a lookup only
+ * tests the bucket under the player and ties still resolve like a list scan.
+ * Overlaps go to the most deeply nested location first (a district inside
+ * its city), then to one with vertical bounds (a mine under the town), then
+ * to the smallest match key. The cell already limits the search to the few
+ * regions around the player, so the hierarchy needs no tree of its own.
+ * Layers stacked in one column share a bucket; a height check rejects the
+ * others first, and the cached lookup measures its safe zone in 3D, so a
+ * player standing still in a layered column stays a cache hit.
+ * Immutable once built: {@link #update} returns a new grid that shares every
+ * bucket it did not touch, and records the bounds it changed so derived
+ * caches ({@link ChunkCandidates}) can drop just the affected parts. It still
+ * copies the cell map itself, O(cells) per edit; edits are rare next to
+ * lookups, which stay a single hash probe.
+ * Crowded buckets also get a {@link PackedLocations} copy, scanned by its
+ * kernel: plain loops, or the Vector API when built in and available.
+ */
+public final class LocationGrid {
+    // 64x64 block cells; a max-radius location spans about 16x16 cells
+    static final int CELL_SHIFT = 6;
+    static final Location[] EMPTY = new Location[0];
+    // changed bounds kept per grid before the history restarts
+    private static final int MAX_CHANGES = 16;
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    public static final LocationGrid EMPTY_GRID = new LocationGrid(new Long2ObjectOpenHashMap<>(), new Long2ObjectOpenHashMap<>(), 0, 0, 0, new int[0]);
+
+    private final Long2ObjectOpenHashMap<Location[]> cells;
+    // buckets of PackedLocations.MIN_SIZE or more, keyed like cells
+    private final Long2ObjectOpenHashMap<PackedLocations> packed;
+    // History for incremental consumers. Grids built by update() share their
+    // origin's lineage; changed lists every location bound (minX, minZ, maxX,
+    // maxZ) added or removed in versions after since, up to this one.
+    final long lineage;
+    final long version;
+    final long since;
+    final int[] changed;
+
+    private LocationGrid(Long2ObjectOpenHashMap<Location[]> cells, Long2ObjectOpenHashMap<PackedLocations> packed,
+                         long lineage, long version, long since, int[] changed) {
+        this.cells = cells;
+        this.packed = packed;
+        this.lineage = lineage;
+        this.version = version;
+        this.since = since;
+        this.changed = changed;
+    }
+
+    public static LocationGrid of(Collection<Location> locations) {
+        Long2ObjectOpenHashMap<Location[]> cells = new Long2ObjectOpenHashMap<>();
+        for (Location loc : locations) add(cells, loc);
+        Long2ObjectOpenHashMap<PackedLocations> packed = new Long2ObjectOpenHashMap<>();
+        for (Location loc : locations) pack(cells, packed, loc);
+        long version = VERSIONS.incrementAndGet();
+        return new LocationGrid(cells, packed, version, version, version, new int[0]);
+    }
+
+    /**
+     * Copy of this grid without {@code removed} and with {@code added} appended;
+     * either may be null. If both have the same bounds, {@code added} takes
+     * {@code removed}'s place in every bucket instead.
+     */
+    public LocationGrid update(Location removed, Location added) {
+        Long2ObjectOpenHashMap<Location[]> copy = new Long2ObjectOpenHashMap<>(cells);
+        if (sameBounds(removed, added)) {
+            replace(copy, removed, added);
+        } else {
+            if (removed != null) remove(copy, removed);
+            if (added != null) add(copy, added);
+        }
+        Long2ObjectOpenHashMap<PackedLocations> packedCopy = new Long2ObjectOpenHashMap<>(packed);
+        if (removed != null) pack(copy, packedCopy, removed);
+        if (added != null) pack(copy, packedCopy, added);
+
+        long version = VERSIONS.incrementAndGet();
+        // EMPTY_GRID is shared by every dimension, so it can't carry a history
+        boolean keep = this != EMPTY_GRID && changed.length / 4 + 2 <= MAX_CHANGES;
+        int[] boxes = keep ? Arrays.copyOf(changed, changed.length + 8) : new int[8];
+        int n = keep ? changed.length : 0;
+        n = bounds(boxes, n, removed);
+        n = bounds(boxes, n, added);
+        return new LocationGrid(copy, packedCopy, this == EMPTY_GRID ? version : lineage, version,
+                keep ? since : this.version, Arrays.copyOf(boxes, n));
+    }
+
+    private static int bounds(int[] boxes, int n, Location loc) {
+        if (loc == null) return n;
+        boxes[n] = loc.minX();
+        boxes[n + 1] = loc.minZ();
+        boxes[n + 2] = loc.maxX();
+        boxes[n + 3] = loc.maxZ();
+        return n + 4;
+    }
+
+    static boolean sameBounds(Location a, Location b) {
+        return a != null && b != null && a.minX() == b.minX() && a.minZ() == b.minZ()
+                && a.maxX() == b.maxX() && a.maxZ() == b.maxZ();
+    }
+
+    private static void replace(Long2ObjectOpenHashMap<Location[]> cells, Location removed, Location added) {
+        for (int cx = added.minX() >> CELL_SHIFT; cx <= added.maxX() >> CELL_SHIFT; cx++) {
+            for (int cz = added.minZ() >> CELL_SHIFT; cz <= added.maxZ() >> CELL_SHIFT; cz++) {
+                long key = key(cx, cz);
+                Location[] bucket = cells.get(key);
+                for (int i = 0; i < bucket.length; i++) {
+                    if (bucket[i] != removed) continue;
+                    Location[] swapped = bucket.clone();
+                    swapped[i] = added;
+                    cells.put(key, swapped);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void add(Long2ObjectOpenHashMap<Location[]> cells, Location loc) {
+        for (int cx = loc.minX() >> CELL_SHIFT; cx <= loc.maxX() >> CELL_SHIFT; cx++) {
+            for (int cz = loc.minZ() >> CELL_SHIFT; cz <= loc.maxZ() >> CELL_SHIFT; cz++) {
+                long key = key(cx, cz);
+                Location[] bucket = cells.get(key);
+                if (bucket == null) {
+                    cells.put(key, new Location[] { loc });
+                } else {
+                    Location[] grown = Arrays.copyOf(bucket, bucket.length + 1);
+                    grown[bucket.length] = loc;
+                    cells.put(key, grown);
+                }
+            }
+        }
+    }
+
+    private static void remove(Long2ObjectOpenHashMap<Location[]> cells, Location loc) {
+        for (int cx = loc.minX() >> CELL_SHIFT; cx <= loc.maxX() >> CELL_SHIFT; cx++) {
+            for (int cz = loc.minZ() >> CELL_SHIFT; cz <= loc.maxZ() >> CELL_SHIFT; cz++) {
+                long key = key(cx, cz);
+                Location[] bucket = cells.get(key);
+                if (bucket == null) continue;
+                int idx = -1;
+                for (int i = 0; i < bucket.length; i++) {
+                    if (bucket[i] == loc) { idx = i; break; }
+                }
+                if (idx < 0) continue;
+                if (bucket.length == 1) {
+                    cells.remove(key);
+                    continue;
+                }
+                Location[] shrunk = new Location[bucket.length - 1];
+                System.arraycopy(bucket, 0, shrunk, 0, idx);
+                System.arraycopy(bucket, idx + 1, shrunk, idx, bucket.length - idx - 1);
+                cells.put(key, shrunk);
+            }
+        }
+    }
+
+    // repacks the buckets under loc's bounds after they changed
+    private static void pack(Long2ObjectOpenHashMap<Location[]> cells, Long2ObjectOpenHashMap<PackedLocations> packed,
+                             Location loc) {
+        for (int cx = loc.minX() >> CELL_SHIFT; cx <= loc.maxX() >> CELL_SHIFT; cx++) {
+            for (int cz = loc.minZ() >> CELL_SHIFT; cz <= loc.maxZ() >> CELL_SHIFT; cz++) {
+                long key = key(cx, cz);
+                Location[] bucket = cells.get(key);
+                PackedLocations p = packed.get(key);
+                if (p != null && p.locations == bucket) continue; // already done for another location
+                p = bucket == null ? null : PackedLocations.pack(bucket);
+                if (p == null) {
+                    packed.remove(key);
+                } else {
+                    packed.put(key, p);
+                }
+            }
+        }
+    }
+
+    /** True if this exact instance is in the grid, i.e. it was not removed or edited since. */
+    public boolean holds(Location loc) {
+        for (Location l : candidates(loc.minX(), loc.minZ())) {
+            if (l == loc) return true;
+        }
+        return false;
+    }
+
+    /** Locations whose bounds overlap the cell containing (x, z). Never null, do not modify. */
+    public Location[] candidates(int x, int z) {
+        Location[] bucket = cells.get(key(x >> CELL_SHIFT, z >> CELL_SHIFT));
+        return bucket == null ? EMPTY : bucket;
+    }
+
+    /** Deepest containing location, then one with height bounds, then smallest match key; earlier insertions win ties. */
+    public Location findBestMatch(int x, int y, int z) {
+        PackedLocations p = packed(x, z);
+        if (p != null) return scan(p, x, y, z, 0, null);
+        Location best = null;
+        long bestKey = Long.MAX_VALUE; // smaller is better
+        for (Location loc : candidates(x, z)) {
+            if (!loc.contains(x, y, z)) continue;
+            long key = loc.matchKey(x, z);
+            if (better(loc, key, best, bestKey)) {
+                bestKey = key;
+                best = loc;
+            }
+        }
+        return best;
+    }
+
+    private static boolean better(Location loc, long key, Location best, long bestKey) {
+        if (best == null) return true;
+        int rank = rank(loc), bestRank = rank(best);
+        if (rank != bestRank) return rank > bestRank;
+        return key < bestKey;
+    }
+
+    // depth first, then a vertically bounded location over an unbounded one
+    static int rank(Location loc) {
+        return loc.depth << 1 | (loc.hasHeight() ? 1 : 0);
+    }
+
+    /**
+     * Same answer as {@link #findBestMatch(int, int, int)}, but reuses the cached
+     * result while the position stays inside the cache's safe zone and the
+     * grid has not been replaced. A miss records the distance to the nearest
+     * boundary that could change the answer.
+     */
+    public Location findBestMatch(int x, int y, int z, RegionCache cache) {
+        if (cache.isFresh(this, x, y, z)) return cache.result();
+        // never trust the answer past the edge of this cell's bucket
+        long gap = edgeGap(x, z, CELL_SHIFT);
+        PackedLocations p = packed(x, z);
+        if (p != null) return scan(p, x, y, z, gap, cache);
+        return match(x, y, z, candidates(x, z), gap, cache);
+    }
+
+    private PackedLocations packed(int x, int z) {
+        return packed.get(key(x >> CELL_SHIFT, z >> CELL_SHIFT));
+    }
+
+    // Cache miss: best of the candidates, remembered in the cache for as far
+    // as the candidates can vouch for, at most gap blocks.
+    Location match(int x, int y, int z, Location[] candidates, long gap, RegionCache cache) {
+        Location best = null;
+        long bestKey = Long.MAX_VALUE;
+        // containing candidates of the highest rank seen
+        int topRank = -1, tied = 0;
+        for (Location loc : candidates) {
+            gap = Math.min(gap, loc.boundaryGap(x, y, z));
+            if (!loc.contains(x, y, z)) continue;
+            int r = rank(loc);
+            if (r > topRank) {
+                topRank = r;
+                tied = 1;
+            } else if (r == topRank) {
+                tied++;
+            }
+            long key = loc.matchKey(x, z);
+            if (better(loc, key, best, bestKey)) {
+                bestKey = key;
+                best = loc;
+            }
+        }
+        // between equally ranked overlaps the winner depends on center distance, so
+        // any move re-checks; a strictly outranking winner (a nested child, a height
+        // layer) holds until a boundary is crossed
+        if (tied > 1) gap = 0;
+
+        cache.update(this, x, y, z, gap, best);
+        return best;
+    }
+
+    // The same for a packed list: the kernel finds the containing entries 64
+    // at a time and the set bits are ranked in list order, so ties resolve
+    // exactly as above. Without a cache only the best match is computed.
+    Location scan(PackedLocations p, int x, int y, int z, long gap, RegionCache cache) {
+        PackedLocations.Kernel kernel = PackedLocations.KERNEL;
+        Location best = null;
+        long bestKey = Long.MAX_VALUE;
+        // containing candidates of the highest rank seen
+        int topRank = -1, tied = 0;
+        for (int from = 0; from < p.locations.length; from += 64) {
+            long bits = kernel.contains(p, from, x, y, z);
+            for (int i : p.other) {
+                if (i >= from && i < from + 64 && p.locations[i].contains(x, y, z)) bits |= 1L << (i - from);
+            }
+            for (; bits != 0; bits &= bits - 1) {
+                Location loc = p.locations[from + Long.numberOfTrailingZeros(bits)];
+                int r = rank(loc);
+                if (r > topRank) {
+                    topRank = r;
+                    tied = 1;
+                } else if (r == topRank) {
+                    tied++;
+                }
+                long key = loc.matchKey(x, z);
+                if (better(loc, key, best, bestKey)) {
+                    bestKey = key;
+                    best = loc;
+                }
+            }
+        }
+        if (cache == null) return best;
+
+        gap = kernel.minGap(p, x, y, z, gap);
+        for (int i : p.other) gap = Math.min(gap, p.locations[i].boundaryGap(x, y, z));
+        if (tied > 1) gap = 0;
+        cache.update(this, x, y, z, gap, best);
+        return best;
+    }
+
+    /** First containing location in insertion order among the best ranked ones, ignoring match keys. */
+    public Location findFirst(int x, int y, int z) {
+        Location first = null;
+        for (Location loc : candidates(x, z)) {
+            if (loc.contains(x, y, z) && (first == null || rank(loc) > rank(first))) first = loc;
+        }
+        return first;
+    }
+
+    /** {@link #findFirst(int, int, int)} at any height, for edits to a location's vertical bounds. */
+    public Location findFirstInColumn(int x, int z) {
+        Location first = null;
+        for (Location loc : candidates(x, z)) {
+            if (loc.contains(x, z) && (first == null || rank(loc) > rank(first))) first = loc;
+        }
+        return first;
+    }
+
+    // blocks from (x, z) to the edge of its aligned square of side 1 << shift
+    static long edgeGap(int x, int z, int shift) {
+        int mask = (1 << shift) - 1;
+        int bx = x & mask, bz = z & mask;
+        return Math.min(Math.min(bx, mask - bx), Math.min(bz, mask - bz));
+    }
+
+    static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+}
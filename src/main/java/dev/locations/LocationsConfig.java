@@ -0,0 +1,76 @@
+package dev.locations;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public final class LocationsConfig {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Path FILE = FabricLoader.getInstance().getConfigDir()
+            .resolve("locations").resolve("config.json");
+
+    // Each player is checked once every N ticks, spread round-robin over the interval
+    public int checkIntervalTicks = 4;
+    // Detection time allowed per world tick in microseconds, 0 = unlimited.
+    // Players left over when it runs out are checked first next tick.
+    public int tickBudgetMicros = 1000;
+    // Scan player positions on background threads after each tick and apply the
+    // results at the start of the next one (one tick later than usual)
+    public boolean parallelDetection = false;
+    // Threads for parallelDetection, 0 = one less than the CPU count
+    public int detectionThreads = 0;
+    // Blocks a player must get outside a location before they count as leaving it (0-16), 0 = off
+    public int hysteresisBlocks = 0;
+    // Seconds before the same location is announced to the same player again, 0 = off
+    public int announceCooldownSeconds = 0;
+    // Per-dimension snapshot format under dims/: "json" (<path>.json, human editable) or "binary" (<path>.bin)
+    public String storeFormat = "json";
+    // Append each change to the dimension's <path>.journal instead of rewriting its snapshot
+    public boolean journal = true;
+    // Rewrite a dimension's snapshot and empty its journal after this many records
+    public int journalCompactRecords = 1000;
+    // Pick up edits made to the files under dims/ while the server runs
+    public boolean hotReload = true;
+
+    public static LocationsConfig load() {
+        LocationsConfig cfg = null;
+        try {
+            if (Files.exists(FILE)) {
+                try (BufferedReader reader = Files.newBufferedReader(FILE, StandardCharsets.UTF_8)) {
+                    cfg = GSON.fromJson(reader, LocationsConfig.class);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[locations] Failed to read config, using defaults: " + e);
+        }
+        if (cfg == null) {
+            cfg = new LocationsConfig();
+            cfg.write();
+        }
+        cfg.checkIntervalTicks = Math.max(1, cfg.checkIntervalTicks);
+        cfg.tickBudgetMicros = Math.max(0, cfg.tickBudgetMicros);
+        cfg.detectionThreads = Math.max(0, cfg.detectionThreads);
+        cfg.hysteresisBlocks = Math.max(0, Math.min(16, cfg.hysteresisBlocks));
+        cfg.announceCooldownSeconds = Math.max(0, Math.min(Integer.MAX_VALUE / 20, cfg.announceCooldownSeconds));
+        cfg.journalCompactRecords = Math.max(1, cfg.journalCompactRecords);
+        return cfg;
+    }
+
+    private void write() {
+        try {
+            Files.createDirectories(FILE.getParent());
+            try (BufferedWriter w = Files.newBufferedWriter(FILE, StandardCharsets.UTF_8)) {
+                GSON.toJson(this, w);
+            }
+        } catch (IOException ioe) {
+            System.err.println("[locations] Failed to write default config: " + ioe);
+        }
+    }
+}
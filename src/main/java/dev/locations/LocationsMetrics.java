@@ -0,0 +1,166 @@
+package dev.locations;
+
+import net.minecraft.util.Identifier;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cheap always-on counters for the mod's hot paths. Detection and
+ * announcement numbers are only touched on the server thread; persistence
+ * numbers are written by the saver thread alone and read with volatile reads.
+ */
+public final class LocationsMetrics {
+    private static final LocationsMetrics INSTANCE = new LocationsMetrics();
+
+    public static LocationsMetrics get() {
+        return INSTANCE;
+    }
+
+    private final Map<Identifier, DimensionStats> dims = new LinkedHashMap<>();
+    private long since = System.nanoTime();
+    private long announced;
+
+    // written by the saver thread only
+    private volatile long snapshots;
+    private volatile long journalAppends;
+    private volatile long bytesWritten;
+    private volatile long lastSaveNanos;
+    private volatile long lastSaveBytes;
+    private volatile long loadNanos;
+    private volatile long loadBytes;
+
+    private LocationsMetrics() {}
+
+    /** One world tick of detection. Server thread. */
+    public void recordScan(Identifier dim, int checks, long nanos) {
+        DimensionStats s = stats(dim);
+        s.ticks++;
+        s.checks += checks;
+        s.tickNanos.record(nanos);
+    }
+
+    /** A world tick whose players were not recorded because the last parallel scan was still running. Server thread. */
+    public void recordSkipped(Identifier dim) {
+        stats(dim).skipped++;
+    }
+
+    private DimensionStats stats(Identifier dim) {
+        DimensionStats s = dims.get(dim);
+        if (s == null) {
+            s = new DimensionStats();
+            dims.put(dim, s);
+        }
+        return s;
+    }
+
+    /** Server thread. */
+    public void recordAnnounced(int count) {
+        announced += count;
+    }
+
+    /** Saver thread. */
+    void recordSave(boolean snapshot, long bytes, long nanos) {
+        if (snapshot) {
+            snapshots++;
+            lastSaveNanos = nanos;
+            lastSaveBytes = bytes;
+        } else {
+            journalAppends++;
+        }
+        bytesWritten += bytes;
+    }
+
+    void recordLoad(long bytes, long nanos) {
+        loadBytes = bytes;
+        loadNanos = nanos;
+    }
+
+    /** Server thread. Persistence totals are kept. */
+    public void reset() {
+        dims.clear();
+        announced = 0;
+        since = System.nanoTime();
+    }
+
+    /** Human readable lines for /location stats. Server thread. */
+    public String[] describe() {
+        String[] lines = new String[dims.size() + 4];
+        int i = 0;
+        lines[i++] = String.format(Locale.ROOT, "Locations stats over the last %ds:", (System.nanoTime() - since) / 1_000_000_000L);
+        for (Map.Entry<Identifier, DimensionStats> e : dims.entrySet()) {
+            DimensionStats s = e.getValue();
+            lines[i++] = String.format(Locale.ROOT, " • %s: checks/tick=%.1f p50=%s p99=%s max=%s",
+                    e.getKey(), s.checks / (double) Math.max(1, s.ticks),
+                    micros(s.tickNanos.percentile(0.50)), micros(s.tickNanos.percentile(0.99)),
+                    micros(s.tickNanos.max))
+                    + (s.skipped > 0 ? " skipped ticks=" + s.skipped : "");
+        }
+        lines[i++] = " • entries announced: " + announced;
+        lines[i++] = " • region scan: " + PackedLocations.describeKernel();
+        lines[i] = String.format(Locale.ROOT, " • saves: %d snapshots (last %s, %s), %d journal appends, %s written; load %s, %s",
+                snapshots, millis(lastSaveNanos), kib(lastSaveBytes), journalAppends, kib(bytesWritten),
+                millis(loadNanos), kib(loadBytes));
+        return lines;
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1fµs", nanos / 1000.0);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1_000_000.0);
+    }
+
+    private static String kib(long bytes) {
+        return String.format(Locale.ROOT, "%.1fKiB", bytes / 1024.0);
+    }
+
+    private static final class DimensionStats {
+        long ticks;
+        long checks;
+        // parallel detection still busy with the last scan
+        long skipped;
+        final NanoHistogram tickNanos = new NanoHistogram();
+    }
+
+    /**
+     * Log-linear histogram: one bucket group per power of two, split into 4
+     * linear sub-buckets, so percentiles are within ~25% at any magnitude.
+     * Recording is a couple of bit operations and an array increment.
+     */
+    static final class NanoHistogram {
+        private static final int SUB_BITS = 2;
+        private final long[] counts = new long[64 << SUB_BITS];
+        private long total;
+        long max;
+
+        void record(long nanos) {
+            long v = Math.max(1, nanos);
+            int top = 63 - Long.numberOfLeadingZeros(v);
+            int sub = top < SUB_BITS ? 0 : (int) (v >>> (top - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+            counts[(top << SUB_BITS) | sub]++;
+            total++;
+            if (nanos > max) max = nanos;
+        }
+
+        /** Upper bound of the bucket holding the given quantile, 0 if empty. */
+        long percentile(double q) {
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    int top = i >>> SUB_BITS;
+                    int sub = i & ((1 << SUB_BITS) - 1);
+                    if (top < SUB_BITS) return 1L << (top + 1);
+                    long step = 1L << (top - SUB_BITS);
+                    return Math.min(max, (1L << top) + (sub + 1) * step);
+                }
+            }
+            return max;
+        }
+    }
+}
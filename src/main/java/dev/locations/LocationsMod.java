@@ -5,33 +5,29 @@ import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.BoolArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 
-import net.minecraft.sound.SoundCategory;
-import net.minecraft.sound.SoundEvents;
-
-import net.minecraft.network.packet.s2c.play.TitleS2CPacket;
-import net.minecraft.network.packet.s2c.play.SubtitleS2CPacket;
-import net.minecraft.network.packet.s2c.play.TitleFadeS2CPacket;
-import net.minecraft.network.packet.s2c.play.PlaySoundS2CPacket;
 import net.minecraft.util.math.Vec3d;
 
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 
 import net.minecraft.command.CommandRegistryAccess;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.text.MutableText;
-import net.minecraft.text.Style;
 import net.minecraft.text.Text;
-import net.minecraft.text.TextColor;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
@@ -41,7 +37,32 @@ public final class LocationsMod implements ModInitializer {
 	
 	 private static final int MAX_LOCATION_RADIUS = 500;
 
-    private final Map<UUID, String> lastInside = new HashMap<>();
+    private final RegionDetector detector = new RegionDetector();
+    private final Map<Identifier, DetectionScheduler> schedulers = new HashMap<>();
+    // per-chunk candidates, only for chunks players have been checked in
+    private final Map<Identifier, ChunkCandidates> chunkCandidates = new HashMap<>();
+    private LocationsConfig config = new LocationsConfig();
+    // null unless config.parallelDetection
+    private ParallelDetection<ServerPlayerEntity> parallel;
+    // server tick, for announcement cooldowns
+    private int tick;
+    private final AnnouncementOutbox outbox = new AnnouncementOutbox();
+    // one import or export at a time
+    private final AtomicBoolean transferring = new AtomicBoolean();
+    // polygons being placed with /location polygon, per player
+    private final Map<UUID, PolygonDraft> drafts = new HashMap<>();
+
+    private static final class PolygonDraft {
+        final String name;
+        final Identifier dim;
+        int[] points = new int[16];
+        int size; // ints used, two per vertex
+
+        PolygonDraft(String name, Identifier dim) {
+            this.name = name;
+            this.dim = dim;
+        }
+    }
 
     // ===== Predefined color presets and helpers =====
     private static final Map<String, Integer> COLOR_PRESETS = new LinkedHashMap<>();
@@ -118,78 +139,163 @@ public final class LocationsMod implements ModInitializer {
         CommandRegistrationCallback.EVENT.register(this::registerCommands);
 
         ServerLifecycleEvents.SERVER_STARTED.register(server -> {
-            LocationsState.get(server).load();
+            config = LocationsConfig.load();
+            LocationsState.get(server).load(config);
+            detector.setHysteresis(config.hysteresisBlocks);
+            if (parallel != null) parallel.shutdown();
+            parallel = config.parallelDetection ? new ParallelDetection<>(config.detectionThreads) : null;
+            // an import the last server stopped before applying never cleared it
+            transferring.set(false);
         });
 
         ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
-            LocationsState.get(server).save();
+            if (parallel != null) {
+                parallel.shutdown();
+                parallel = null;
+            }
+            outbox.clear();
+            LocationsState.get(server).stopWatching();
+            // write out anything still queued and wait for it
+            LocationsState.get(server).flush();
         });
 
-        // Enter detection and HUD
+        ServerTickEvents.START_SERVER_TICK.register(server -> {
+            tick = server.getTicks();
+            // last tick's off-thread results, before anyone moves again
+            if (parallel == null) return;
+            LocationsState state = LocationsState.get(server);
+            parallel.apply((batch, i) -> applyResult(state, batch, i));
+        });
+
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            if (parallel != null) parallel.dispatch();
+            // every world has ticked; send this tick's announcements in one go
+            outbox.flush();
+            LocationsState.get(server).applyReloads();
+            LocationsState.get(server).saveIfDirty();
+        });
+
+        // a world's locations stay loaded only while the world is
+        ServerWorldEvents.UNLOAD.register((server, world) -> {
+            Identifier dimId = world.getRegistryKey().getValue();
+            schedulers.remove(dimId);
+            chunkCandidates.remove(dimId);
+            if (parallel != null) parallel.clear();
+            LocationsState.get(server).unload(dimId);
+        });
+
+        ServerChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> {
+            ChunkCandidates chunks = chunkCandidates.get(world.getRegistryKey().getValue());
+            if (chunks != null) chunks.unload(chunk.getPos().x, chunk.getPos().z);
+        });
+
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            drafts.remove(handler.player.getUuid());
+            for (Location l = detector.forget(handler.player.getUuid()); l != null; l = l.parent) {
+                LocationEvents.EXIT.invoker().onExit(handler.player, l);
+            }
+        });
+
+        // Enter detection and HUD, spread over checkIntervalTicks
         ServerTickEvents.END_WORLD_TICK.register(world -> {
             MinecraftServer server = world.getServer();
             LocationsState state = LocationsState.get(server);
 
             Identifier dimId = world.getRegistryKey().getValue();
-            List<Location> locs = state.getLocations(dimId);
-            if (locs.isEmpty()) return;
-
-            for (ServerPlayerEntity p : world.getPlayers()) {
-                BlockPos bp = p.getBlockPos();
-
-                Location current = findBestMatch(locs, bp);
-                String key = current == null ? null : current.name;
-
-                String prev = lastInside.put(p.getUuid(), key);
-                boolean justEntered = !Objects.equals(prev, key) && key != null;
-
-                if (current != null && justEntered) {
-                    int rgb = current.colorRgb != -1 ? current.colorRgb : 0xFFFFFF;
-                    if (current.fancy) {
-                        Text title = Text.literal(current.name)
-                                .setStyle(Style.EMPTY.withColor(TextColor.fromRgb(rgb)));
-                        // underline sized to the name
-                        StringBuilder sb = new StringBuilder();
-                        int n = Math.max(8, current.name.length() * 2);
-                        for (int i = 0; i < n; i++) sb.append('¯');
-                        Text subtitle = Text.literal(sb.toString());
-                        try {
-                            // Center-screen title with fade in/out
-							p.networkHandler.sendPacket(new TitleFadeS2CPacket(10, 70, 20));
-							p.networkHandler.sendPacket(new TitleS2CPacket(title));
-							p.networkHandler.sendPacket(new SubtitleS2CPacket(subtitle));
-							
-							p.networkHandler.sendPacket(
-								new PlaySoundS2CPacket(
-									SoundEvents.AMBIENT_BASALT_DELTAS_MOOD, // the vanilla event
-									SoundCategory.AMBIENT,                  // or MASTER if you want it louder
-									p.getX(), p.getY(), p.getZ(),          // play at the player
-									1.0f,                                   // volume
-									1.0f,                                   // pitch
-									p.getRandom().nextLong()                // seed
-								)
-							);
-
-                        } catch (Throwable t) {
-                            // If mappings ever change, fall back to action bar
-                            MutableText msg = Text.literal("Now Entering ")
-                                    .append(Text.literal(current.name)
-                                            .setStyle(Style.EMPTY.withColor(TextColor.fromRgb(rgb))));
-                            p.sendMessage(msg, true);
-                        }
-                    } else {
-                        MutableText msg = Text.literal("Now Entering ")
-                            .append(
-                                Text.literal(current.name)
-                                    .setStyle(Style.EMPTY.withColor(TextColor.fromRgb(rgb)))
-                            );
-                        p.sendMessage(msg, true); // action bar
+            DimensionSnapshot snap = state.snapshot(dimId);
+            int dimKey = detector.dimensionKey(dimId);
+            if (snap.isEmpty()) {
+                // nothing to enter, but whoever still counts as inside somewhere
+                // (arrived from another dimension, or the last location was removed) exits
+                ChunkCandidates chunks = null;
+                for (ServerPlayerEntity p : world.getPlayers()) {
+                    if (!detector.inLocation(p.getUuid())) continue;
+                    if (chunks == null) {
+                        chunks = chunkCandidates.computeIfAbsent(dimId, k -> new ChunkCandidates());
+                        chunks.sync(snap.grid());
                     }
+                    checkPlayer(p, dimKey, chunks);
                 }
+                return;
+            }
+            DetectionScheduler scheduler = schedulers.computeIfAbsent(dimId, k -> new DetectionScheduler());
+
+            if (parallel != null) {
+                // positions only; they are scanned after this tick and applied at the start of the next
+                // the last scan is still running; its players are due again next tick
+                if (parallel.busy()) {
+                    LocationsMetrics.get().recordSkipped(dimId);
+                    return;
+                }
+                ParallelDetection.Batch<ServerPlayerEntity> batch = parallel.batch(dimId, dimKey, snap.grid());
+                long start = System.nanoTime();
+                scheduler.run(world.getPlayers(), config.checkIntervalTicks, config.tickBudgetMicros * 1000L, p -> {
+                    BlockPos bp = p.getBlockPos();
+                    batch.add(p, bp.getX(), bp.getY(), bp.getZ());
+                });
+                batch.addNanos(System.nanoTime() - start);
+                return;
+            }
+
+            ChunkCandidates chunks = chunkCandidates.computeIfAbsent(dimId, k -> new ChunkCandidates());
+            chunks.sync(snap.grid());
+            RegionScanEvent event = new RegionScanEvent();
+            event.begin();
+            long start = System.nanoTime();
+            int checks = scheduler.run(world.getPlayers(), config.checkIntervalTicks,
+                    config.tickBudgetMicros * 1000L, p -> checkPlayer(p, dimKey, chunks));
+            LocationsMetrics.get().recordScan(dimId, checks, System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.dimension = dimId.toString();
+                event.checks = checks;
+                event.commit();
             }
         });
     }
 
+    private void checkPlayer(ServerPlayerEntity p, int dimKey, ChunkCandidates chunks) {
+        BlockPos bp = p.getBlockPos();
+        report(p, detector.check(p.getUuid(), dimKey, chunks, bp.getX(), bp.getY(), bp.getZ()));
+    }
+
+    // A parallel result is a tick old: drop it if the player has left, changed
+    // dimension, or the locations changed since; they are checked again next round.
+    private void applyResult(LocationsState state, ParallelDetection.Batch<ServerPlayerEntity> batch, int i) {
+        ServerPlayerEntity p = batch.player(i);
+        Identifier dimId = batch.dimension();
+        if (p.isRemoved() || !p.getEntityWorld().getRegistryKey().getValue().equals(dimId)) return;
+        if (state.snapshot(dimId).grid() != batch.grid()) return;
+        report(p, detector.record(p.getUuid(), batch.dimensionKey(), batch.grid(), batch.result(i),
+                batch.x(i), batch.y(i), batch.z(i)));
+    }
+
+    // exits, enters and the announcement for the detector's last check
+    private void report(ServerPlayerEntity p, Location entered) {
+        Location inside = detector.inside();
+        Location previous = detector.previous();
+        if (previous != null) {
+            // left: the old chain up to where it meets the new one, innermost first
+            for (Location l = previous; l != null && (inside == null || !inside.isWithin(l)); l = l.parent) {
+                LocationEvents.EXIT.invoker().onExit(p, l);
+            }
+        }
+        if (entered != null && detector.announce(entered, tick, config.announceCooldownSeconds * 20)) {
+            outbox.queue(p, entered);
+        }
+        if (previous != null || entered != null) {
+            fireEnter(p, inside, previous);
+        } else if (inside != null) {
+            LocationEvents.DWELL.invoker().onDwell(p, inside);
+        }
+    }
+
+    // entered: the new chain down from where it meets the old one, outermost first
+    private static void fireEnter(ServerPlayerEntity p, Location loc, Location previous) {
+        if (loc == null || (previous != null && previous.isWithin(loc))) return;
+        fireEnter(p, loc.parent, previous);
+        LocationEvents.ENTER.invoker().onEnter(p, loc);
+    }
+
     // 1.21.x: env type is CommandManager.RegistrationEnvironment
     private void registerCommands(CommandDispatcher<ServerCommandSource> dispatcher,
                                   CommandRegistryAccess access,
@@ -279,8 +385,43 @@ public final class LocationsMod implements ModInitializer {
                         )
                     )
                 )
+                .then(literal("polygon")
+                    .then(literal("start")
+                        .then(argument("name", StringArgumentType.string())
+                            .executes(ctx -> polygonStart(ctx.getSource(), StringArgumentType.getString(ctx, "name")))
+                        )
+                    )
+                    .then(literal("point")
+                        .executes(ctx -> polygonPoint(ctx.getSource()))
+                    )
+                    .then(literal("undo")
+                        .executes(ctx -> polygonUndo(ctx.getSource()))
+                    )
+                    .then(literal("finish")
+                        .executes(ctx -> polygonFinish(ctx.getSource(), null))
+                        .then(argument("color", StringArgumentType.word())
+                            .suggests((ctx, b) ->
+                                net.minecraft.command.CommandSource.suggestMatching(COLOR_NAMES, b))
+                            .executes(ctx -> polygonFinish(ctx.getSource(), StringArgumentType.getString(ctx, "color")))
+                        )
+                    )
+                    .then(literal("cancel")
+                        .executes(ctx -> {
+                            ServerPlayerEntity p = ctx.getSource().getPlayer();
+                            if (p == null) return 0;
+                            if (drafts.remove(p.getUuid()) == null) {
+                                ctx.getSource().sendError(Text.literal("No polygon in progress."));
+                                return 0;
+                            }
+                            ctx.getSource().sendFeedback(() -> Text.literal("Polygon discarded."), false);
+                            return 1;
+                        })
+                    )
+                )
                 .then(literal("remove")
                     .then(argument("name", StringArgumentType.string())
+                        .suggests((ctx, b) -> net.minecraft.command.CommandSource.suggestMatching(
+                            locationNames(ctx.getSource()), b))
                         .executes(ctx -> {
                             ServerCommandSource src = ctx.getSource();
                             ServerPlayerEntity p = src.getPlayer();
@@ -325,10 +466,8 @@ public final class LocationsMod implements ModInitializer {
                                     return 0;
                                 }
 
-                                Location updated = new Location(newName, loc.center, loc.radius, loc.colorRgb, loc.shape);
-                                state.remove(dim, loc.name);
-                                state.add(dim, updated);
-                                state.save();
+                                // children refer to their parent by name and follow it
+                                state.rename(dim, loc, loc.withName(newName));
 
                                 src.sendFeedback(() -> Text.literal("Renamed location to '" + newName + "'."), true);
                                 return 1;
@@ -361,16 +500,31 @@ public final class LocationsMod implements ModInitializer {
                                     return 0;
                                 }
 
-                                Location updated = new Location(loc.name, loc.center, loc.radius, rgb, loc.shape);
-                                state.remove(dim, loc.name);
-                                state.add(dim, updated);
-                                state.save();
+                                state.add(dim, loc.withColor(rgb));
 
                                 src.sendFeedback(() -> Text.literal("Updated color to " + colorStr.toLowerCase(Locale.ROOT) + "."), true);
                                 return 1;
                             })
                         )
                     )
+                    .then(literal("parent")
+                        .executes(ctx -> editParent(ctx.getSource(), null))
+                        .then(argument("parent", StringArgumentType.string())
+                            .suggests((ctx, b) -> net.minecraft.command.CommandSource.suggestMatching(
+                                locationNames(ctx.getSource()), b))
+                            .executes(ctx -> editParent(ctx.getSource(), StringArgumentType.getString(ctx, "parent")))
+                        )
+                    )
+                    .then(literal("height")
+                        .executes(ctx -> editHeight(ctx.getSource(), Integer.MIN_VALUE, Integer.MAX_VALUE))
+                        .then(argument("minY", IntegerArgumentType.integer())
+                            .then(argument("maxY", IntegerArgumentType.integer())
+                                .executes(ctx -> editHeight(ctx.getSource(),
+                                        IntegerArgumentType.getInteger(ctx, "minY"),
+                                        IntegerArgumentType.getInteger(ctx, "maxY")))
+                            )
+                        )
+                    )
                 )
                 .then(literal("list")
                     .executes(ctx -> {
@@ -387,8 +541,11 @@ public final class LocationsMod implements ModInitializer {
                             src.sendFeedback(() -> Text.literal("Locations:"), false);
                             for (Location l : locs) {
                                 String extra = (l.colorRgb != -1) ? (" color=#" + String.format("%06X", l.colorRgb)) : "";
+                                String points = l.shape == Location.Shape.POLYGON ? " points=" + l.pointCount() : "";
+                                String parent = l.parentName != null ? " in=" + l.parentName : "";
+                                String height = l.hasHeight() ? " y=" + heightRange(l) : "";
                                 src.sendFeedback(() -> Text.literal(" • " + l.name + " @ " + l.center.toShortString()
-                                        + " r=" + l.radius + " shape=" + l.shape.name().toLowerCase(Locale.ROOT) + extra), false);
+                                        + " r=" + l.radius + " shape=" + l.shape.name().toLowerCase(Locale.ROOT) + points + height + parent + extra), false);
                             }
                         }
                         return 1;
@@ -412,64 +569,278 @@ public final class LocationsMod implements ModInitializer {
                             }
 
                             boolean value = BoolArgumentType.getBool(ctx, "value");
-                            Location updated = new Location(loc.name, loc.center, loc.radius, loc.colorRgb, loc.shape, value);
-                            state.remove(dim, loc.name);
-                            state.add(dim, updated);
-                            state.save();
+                            state.add(dim, loc.withFancy(value));
                             src.sendFeedback(() -> Text.literal("Set fancy=" + value + " for '" + loc.name + "'."), true);
                             return 1;
                         })
                     )
                 )
+                .then(literal("import")
+                    .requires(src -> src.hasPermissionLevel(2)) // operators only
+                    .then(argument("file", StringArgumentType.string())
+                        .executes(ctx -> importLocations(ctx.getSource(), StringArgumentType.getString(ctx, "file")))
+                    )
+                )
+                .then(literal("export")
+                    .requires(src -> src.hasPermissionLevel(2)) // operators only
+                    .then(argument("file", StringArgumentType.string())
+                        .executes(ctx -> exportLocations(ctx.getSource(), StringArgumentType.getString(ctx, "file")))
+                    )
+                )
+                .then(literal("stats")
+                    .requires(src -> src.hasPermissionLevel(2)) // operators only
+                    .executes(ctx -> {
+                        ServerCommandSource src = ctx.getSource();
+                        for (String line : LocationsMetrics.get().describe()) {
+                            src.sendFeedback(() -> Text.literal(line), false);
+                        }
+                        return 1;
+                    })
+                    .then(literal("reset")
+                        .executes(ctx -> {
+                            LocationsMetrics.get().reset();
+                            ctx.getSource().sendFeedback(() -> Text.literal("Reset location stats."), true);
+                            return 1;
+                        })
+                    )
+                )
         );
     }
 
-    private static Location findBestMatch(List<Location> locs, BlockPos bp) {
-        Location best = null;
-        long bestKey = Long.MAX_VALUE; // smaller is better
-        for (Location loc : locs) {
-            long dx = bp.getX() - loc.center.getX();
-            long dz = bp.getZ() - loc.center.getZ();
-            boolean inside;
-            long key;
-
-            if (loc.shape == Location.Shape.CIRCLE) {
-                long d2 = dx * dx + dz * dz;
-                long r2 = (long) loc.radius * (long) loc.radius;
-                inside = d2 <= r2;
-                key = d2;
-            } else {
-                long adx = Math.abs(dx);
-                long adz = Math.abs(dz);
-                inside = (adx <= loc.radius) && (adz <= loc.radius);
-                key = Math.max(adx, adz);
-            }
+    private int polygonStart(ServerCommandSource src, String name) {
+        ServerPlayerEntity p = src.getPlayer();
+        if (p == null) return 0;
+        Identifier dim = src.getWorld().getRegistryKey().getValue();
+        if (LocationsState.get(src.getServer()).find(dim, name) != null) {
+            src.sendError(Text.literal("Location already exists: " + name));
+            return 0;
+        }
+        drafts.put(p.getUuid(), new PolygonDraft(name, dim));
+        src.sendFeedback(() -> Text.literal("Started polygon '" + name + "'. Walk its outline with /location polygon point, then /location polygon finish."), false);
+        return 1;
+    }
 
-            if (inside && key < bestKey) {
-                bestKey = key;
-                best = loc;
-            }
+    private int polygonPoint(ServerCommandSource src) {
+        ServerPlayerEntity p = src.getPlayer();
+        if (p == null) return 0;
+        PolygonDraft draft = drafts.get(p.getUuid());
+        if (draft == null) {
+            src.sendError(Text.literal("Start a polygon first with /location polygon start <name>."));
+            return 0;
+        }
+        if (!draft.dim.equals(src.getWorld().getRegistryKey().getValue())) {
+            src.sendError(Text.literal("The polygon was started in another dimension."));
+            return 0;
         }
-        return best;
+        if (draft.size >= 2 * Location.MAX_POLYGON_POINTS) {
+            src.sendError(Text.literal("A polygon can have at most " + Location.MAX_POLYGON_POINTS + " points."));
+            return 0;
+        }
+        BlockPos pos = p.getBlockPos();
+        if (draft.size == draft.points.length) draft.points = Arrays.copyOf(draft.points, draft.size * 2);
+        draft.points[draft.size++] = pos.getX();
+        draft.points[draft.size++] = pos.getZ();
+        int n = draft.size / 2;
+        src.sendFeedback(() -> Text.literal("Point " + n + " at " + pos.getX() + ", " + pos.getZ()), false);
+        return 1;
     }
 
-    private static Location tryFindLocAt(LocationsState state, Identifier dim, BlockPos pos) {
-        for (Location l : state.getLocations(dim)) {
-            if (contains(l, pos)) return l;
+    private int polygonUndo(ServerCommandSource src) {
+        ServerPlayerEntity p = src.getPlayer();
+        if (p == null) return 0;
+        PolygonDraft draft = drafts.get(p.getUuid());
+        if (draft == null || draft.size == 0) {
+            src.sendError(Text.literal("No polygon point to undo."));
+            return 0;
+        }
+        draft.size -= 2;
+        int n = draft.size / 2;
+        src.sendFeedback(() -> Text.literal("Removed the last point, " + n + " left."), false);
+        return 1;
+    }
+
+    private int polygonFinish(ServerCommandSource src, String colorStr) {
+        ServerPlayerEntity p = src.getPlayer();
+        if (p == null) return 0;
+        PolygonDraft draft = drafts.get(p.getUuid());
+        if (draft == null) {
+            src.sendError(Text.literal("No polygon in progress."));
+            return 0;
         }
-        return null;
+        int rgb = colorStr == null ? -1 : presetColorOrError(colorStr);
+        if (rgb == -2) {
+            src.sendError(Text.literal("Unknown color name. Use tab to see options."));
+            return 0;
+        }
+        int[] points = Arrays.copyOf(draft.points, draft.size);
+        String error = Location.checkPolygon(points);
+        if (error != null) {
+            src.sendError(Text.literal(error));
+            return 0;
+        }
+        LocationsState state = LocationsState.get(src.getServer());
+        if (state.find(draft.dim, draft.name) != null) {
+            src.sendError(Text.literal("Location already exists: " + draft.name));
+            return 0;
+        }
+        // the mask is rasterized here, once
+        Location loc = Location.polygon(draft.name, p.getBlockPos().getY(), points, rgb, false);
+        state.add(draft.dim, loc);
+        drafts.remove(p.getUuid());
+        src.sendFeedback(() -> Text.literal("Created location '" + loc.name + "' shape=polygon points=" + loc.pointCount()
+                + " @ " + loc.center.toShortString() + " r=" + loc.radius), true);
+        return 1;
     }
 
-    private static boolean contains(Location l, BlockPos p) {
-        int dx = p.getX() - l.center.getX();
-        int dz = p.getZ() - l.center.getZ();
-        int r  = l.radius;
-        if (l.shape == Location.Shape.SQUARE) {
-            return Math.abs(dx) <= r && Math.abs(dz) <= r;
-        } else {
-            long d2 = (long)dx * dx + (long)dz * dz;
-            long r2 = (long)r * r;
-            return d2 <= r2;
+    // Nests the location the player stands in under another one, or makes it a root
+    private static int editParent(ServerCommandSource src, String parentName) {
+        ServerPlayerEntity p = src.getPlayer();
+        if (p == null) return 0;
+
+        LocationsState state = LocationsState.get(src.getServer());
+        Identifier dim = src.getWorld().getRegistryKey().getValue();
+        Location loc = tryFindLocAt(state, dim, p.getBlockPos());
+        if (loc == null) {
+            src.sendError(Text.literal("You’re not standing inside a location."));
+            return 0;
+        }
+        if (parentName == null) {
+            state.add(dim, loc.withParent(null));
+            src.sendFeedback(() -> Text.literal("'" + loc.name + "' is no longer nested."), true);
+            return 1;
+        }
+        Location parent = state.find(dim, parentName);
+        if (parent == null) {
+            src.sendError(Text.literal("No such location: " + parentName));
+            return 0;
+        }
+        if (parent.isWithin(loc)) {
+            src.sendError(Text.literal("A location can't be nested inside itself or its own children."));
+            return 0;
+        }
+        if (parent.depth + 1 > Location.MAX_DEPTH) {
+            src.sendError(Text.literal("Locations can be nested at most " + Location.MAX_DEPTH + " deep."));
+            return 0;
         }
+        state.add(dim, loc.withParent(parent.name));
+        src.sendFeedback(() -> Text.literal("'" + loc.name + "' is now inside '" + parent.name + "'."), true);
+        return 1;
+    }
+
+    // Limits the location the player stands in to minY..maxY, or lifts the limit.
+    // The player may be outside its current range, e.g. after setting one that
+    // excludes them, so fall back to the column above and below them.
+    private static int editHeight(ServerCommandSource src, int minY, int maxY) {
+        ServerPlayerEntity p = src.getPlayer();
+        if (p == null) return 0;
+        if (minY > maxY) {
+            src.sendError(Text.literal("minY must not be above maxY."));
+            return 0;
+        }
+
+        LocationsState state = LocationsState.get(src.getServer());
+        Identifier dim = src.getWorld().getRegistryKey().getValue();
+        Location loc = state.findInColumn(dim, p.getBlockPos());
+        if (loc == null) {
+            src.sendError(Text.literal("You’re not standing above, below or inside a location."));
+            return 0;
+        }
+        Location updated = loc.withHeight(minY, maxY);
+        state.add(dim, updated);
+        src.sendFeedback(() -> Text.literal(updated.hasHeight()
+                ? "'" + loc.name + "' now spans y=" + heightRange(updated) + "."
+                : "'" + loc.name + "' now spans all heights."), true);
+        return 1;
+    }
+
+    private static String heightRange(Location l) {
+        return (l.minY == Integer.MIN_VALUE ? "" : Integer.toString(l.minY))
+                + ".." + (l.maxY == Integer.MAX_VALUE ? "" : Integer.toString(l.maxY));
+    }
+
+    // Parses off the server thread, then applies everything in one swap on it
+    private int importLocations(ServerCommandSource src, String name) {
+        Path file = LocationsState.transferFile(name);
+        if (file == null) {
+            src.sendError(Text.literal("File must be inside config/locations/transfer."));
+            return 0;
+        }
+        if (!transferring.compareAndSet(false, true)) {
+            src.sendError(Text.literal("An import or export is already running."));
+            return 0;
+        }
+        MinecraftServer server = src.getServer();
+        String defaultDim = src.getWorld().getRegistryKey().getValue().toString();
+        startTransfer("Locations Import", () -> {
+            try {
+                LocationsTransfer.Imported in = LocationsTransfer.read(file, defaultDim, MAX_LOCATION_RADIUS);
+                server.execute(() -> {
+                    // a second import waits until this one is applied
+                    try {
+                        int dims = LocationsState.get(server).importAll(in.byDim);
+                        int imported = in.rows - in.skipped;
+                        src.sendFeedback(() -> Text.literal("Imported " + imported + " locations into " + dims
+                                + " dimension(s)" + (in.skipped > 0 ? ", skipped " + in.skipped + " invalid rows." : ".")), true);
+                    } finally {
+                        transferring.set(false);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                transferring.set(false);
+                System.err.println("[locations] Import of " + file + " failed: " + e);
+                server.execute(() -> src.sendError(Text.literal("Import failed: " + e.getMessage())));
+            }
+        });
+        return 1;
+    }
+
+    // Loaded snapshots are immutable, so they can be written from another thread,
+    // which also reads the unloaded dimensions from disk
+    private int exportLocations(ServerCommandSource src, String name) {
+        Path file = LocationsState.transferFile(name);
+        if (file == null) {
+            src.sendError(Text.literal("File must be inside config/locations/transfer."));
+            return 0;
+        }
+        if (!transferring.compareAndSet(false, true)) {
+            src.sendError(Text.literal("An import or export is already running."));
+            return 0;
+        }
+        MinecraftServer server = src.getServer();
+        LocationsState state = LocationsState.get(server);
+        Map<String, List<Location>> loaded = state.exportLoaded();
+        startTransfer("Locations Export", () -> {
+            try {
+                int rows = LocationsTransfer.write(file, state.exportUnloaded(loaded));
+                server.execute(() -> src.sendFeedback(() -> Text.literal("Exported " + rows + " locations to " + name + "."), true));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[locations] Export to " + file + " failed: " + e);
+                server.execute(() -> src.sendError(Text.literal("Export failed: " + e.getMessage())));
+            } finally {
+                transferring.set(false);
+            }
+        });
+        return 1;
+    }
+
+    // The task clears transferring once it is done
+    private void startTransfer(String threadName, Runnable task) {
+        Thread t = new Thread(task, threadName);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Existing names in the source's dimension, quoted when brigadier needs it
+    private static List<String> locationNames(ServerCommandSource src) {
+        Identifier dim = src.getWorld().getRegistryKey().getValue();
+        List<String> names = new ArrayList<>();
+        for (Location l : LocationsState.get(src.getServer()).getLocations(dim)) {
+            names.add(StringArgumentType.escapeIfRequired(l.name));
+        }
+        return names;
+    }
+
+    private static Location tryFindLocAt(LocationsState state, Identifier dim, BlockPos pos) {
+        return state.findAt(dim, pos);
     }
 }
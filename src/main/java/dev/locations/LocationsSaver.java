@@ -0,0 +1,134 @@
+package dev.locations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write-behind saver. Journal records and snapshots handed in from the server
+ * thread are written in order, per dimension, on a single background thread.
+ * A dimension's snapshot supersedes everything queued for it before, so
+ * bursts collapse into one write.
+ */
+final class LocationsSaver {
+    private final LocationsStorage storage;
+    private final Object lock = new Object();
+    private final Map<String, List<String>> records = new HashMap<>();
+    private final Map<String, List<Location>> pending = new HashMap<>();
+    private boolean writing;
+    // dimensions in the batch being written
+    private final Set<String> inFlight = new HashSet<>();
+    private Thread thread;
+
+    LocationsSaver(LocationsStorage storage) {
+        this.storage = storage;
+    }
+
+    /** Queues one journal record behind anything already queued for the dimension. */
+    void append(String dim, String record) {
+        synchronized (lock) {
+            records.computeIfAbsent(dim, k -> new ArrayList<>()).add(record);
+            wake();
+        }
+    }
+
+    /** Queues an immutable snapshot of one dimension, dropping queued work it already covers. */
+    void submit(String dim, List<Location> snapshot) {
+        synchronized (lock) {
+            records.remove(dim);
+            pending.put(dim, snapshot);
+            wake();
+        }
+    }
+
+    /** Blocks until everything queued so far has been written. */
+    void flush() {
+        flush(null);
+    }
+
+    /** Blocks until everything queued so far for {@code dim} (every dimension if null) has been written. */
+    void flush(String dim) {
+        synchronized (lock) {
+            boolean interrupted = false;
+            while (dim == null ? !pending.isEmpty() || !records.isEmpty() || writing
+                    : pending.containsKey(dim) || records.containsKey(dim) || inFlight.contains(dim)) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wake() {
+        if (thread == null) {
+            thread = new Thread(this::run, "Locations Saver");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        lock.notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            Map<String, List<Location>> snapshots;
+            Map<String, List<String>> batch;
+            synchronized (lock) {
+                while (pending.isEmpty() && records.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // daemon thread, keep serving until the JVM exits
+                    }
+                }
+                // any records still queued for a dimension arrived after its
+                // snapshot, so snapshots go first
+                snapshots = new HashMap<>(pending);
+                batch = new HashMap<>(records);
+                pending.clear();
+                records.clear();
+                inFlight.addAll(snapshots.keySet());
+                inFlight.addAll(batch.keySet());
+                writing = true;
+            }
+            try {
+                for (Map.Entry<String, List<Location>> e : snapshots.entrySet()) {
+                    write(e.getKey(), e.getValue(), null);
+                }
+                for (Map.Entry<String, List<String>> e : batch.entrySet()) {
+                    write(e.getKey(), null, e.getValue());
+                }
+            } finally {
+                synchronized (lock) {
+                    writing = false;
+                    inFlight.clear();
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void write(String dim, List<Location> snapshot, List<String> batch) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            long bytes = snapshot != null ? storage.writeSnapshot(dim, snapshot) : storage.append(dim, batch);
+            LocationsMetrics.get().recordSave(snapshot != null, bytes, System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.operation = snapshot != null ? "snapshot" : "journal";
+                event.dimension = dim;
+                event.bytes = bytes;
+                event.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[locations] Background save of " + dim + " failed: " + e);
+        }
+    }
+}
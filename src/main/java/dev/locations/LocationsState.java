@@ -1,29 +1,35 @@
 package dev.locations;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.Identifier;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import net.minecraft.util.math.BlockPos;
 
 public final class LocationsState {
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-    private static final Type MAP_TYPE = new TypeToken<Map<String, List<StoredLocation>>>(){}.getType();
-    private static final Path FILE = FabricLoader.getInstance().getConfigDir()
-            .resolve("locations").resolve("locations.json");
+    private static final Path DIR = FabricLoader.getInstance().getConfigDir().resolve("locations");
 
-    private final Map<String, List<Location>> byDim = new HashMap<>();
+    // Immutable snapshots of the loaded dimensions (empty ones included),
+    // replaced wholesale by writers. Readers on any thread get a consistent
+    // view without locking. A dimension is read from disk on first use.
+    private final AtomicReference<Map<Identifier, DimensionSnapshot>> dims = new AtomicReference<>(Map.of());
+    private final LocationsStorage storage = new LocationsStorage(DIR);
+    private final LocationsSaver saver = new LocationsSaver(storage);
+    private LocationsConfig config = new LocationsConfig();
+    // dimensions with changes not yet covered by a snapshot handed to the saver
+    private final Set<Identifier> dirty = new HashSet<>();
+    // journal records written per dimension since its last snapshot
+    private final Map<Identifier, Integer> journaled = new HashMap<>();
+    // loaded empty because their files failed to read; nothing is written over them
+    private final Set<Identifier> unreadable = new HashSet<>();
+    // outside edits found by the watcher, applied once per tick
+    private final Queue<LocationsWatcher.Reload> reloads = new ConcurrentLinkedQueue<>();
+    private LocationsWatcher watcher;
     private static final LocationsState INSTANCE = new LocationsState();
     private LocationsState() {}
 
@@ -31,102 +37,338 @@ public final class LocationsState {
         return INSTANCE;
     }
 
+    /**
+     * Current snapshot of a dimension, {@link DimensionSnapshot#EMPTY} if it
+     * has no locations. The first call for a dimension loads it from disk.
+     */
+    public DimensionSnapshot snapshot(Identifier dimensionId) {
+        DimensionSnapshot snap = dims.get().get(dimensionId);
+        return snap != null ? snap : loadDimension(dimensionId);
+    }
+
+    /** Unmodifiable, insertion-ordered. */
     public List<Location> getLocations(Identifier dimensionId) {
-        return byDim.computeIfAbsent(dimensionId.toString(), k -> new ArrayList<>());
+        return snapshot(dimensionId).locations();
+    }
+
+    public LocationGrid getIndex(Identifier dimensionId) {
+        return snapshot(dimensionId).grid();
     }
 
-    public void add(Identifier dimensionId, Location loc) {
-        getLocations(dimensionId).add(loc);
+    /** Appends a location; one with the same name (ignoring case) is replaced in place. */
+    public synchronized void add(Identifier dimensionId, Location loc) {
+        publish(dimensionId, snapshot(dimensionId).with(loc));
+        changed(dimensionId, loc, null);
     }
 
-    public boolean remove(Identifier dimensionId, String name) {
-        List<Location> list = getLocations(dimensionId);
-        return list.removeIf(l -> l.name.equalsIgnoreCase(name));
+    /**
+     * Renames a location where it stands and points its children at the new
+     * name, published and journaled as a single change.
+     */
+    public synchronized void rename(Identifier dimensionId, Location old, Location renamed) {
+        DimensionSnapshot before = snapshot(dimensionId);
+        DimensionSnapshot after = before.rename(old.name, renamed);
+        if (after == before) return;
+        publish(dimensionId, after);
+        changed(dimensionId, renamed, old.name);
+    }
+
+    public synchronized boolean remove(Identifier dimensionId, String name) {
+        DimensionSnapshot before = snapshot(dimensionId);
+        DimensionSnapshot after = before.without(name);
+        if (after == before) return false;
+        publish(dimensionId, after);
+        changed(dimensionId, null, name);
+        return true;
     }
 
     public Location find(Identifier dimensionId, String name) {
-        for (Location l : getLocations(dimensionId)) {
-            if (l.name.equalsIgnoreCase(name)) return l;
+        return snapshot(dimensionId).find(name);
+    }
+
+    /** Best match for the position under the "smallest key wins" rule, or null. */
+    public Location findBestMatch(Identifier dimensionId, BlockPos pos) {
+        return getIndex(dimensionId).findBestMatch(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    /** First location in list order containing the position, preferring nested ones, or null. */
+    public Location findAt(Identifier dimensionId, BlockPos pos) {
+        return getIndex(dimensionId).findFirst(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    /**
+     * {@link #findAt}, or if no location spans the position's height, the
+     * first one in the column above and below it.
+     */
+    public Location findInColumn(Identifier dimensionId, BlockPos pos) {
+        LocationGrid grid = getIndex(dimensionId);
+        Location loc = grid.findFirst(pos.getX(), pos.getY(), pos.getZ());
+        return loc != null ? loc : grid.findFirstInColumn(pos.getX(), pos.getZ());
+    }
+
+    /**
+     * Upserts imported locations into every dimension they name, rebuilding
+     * each affected snapshot once and publishing them all in one swap. The
+     * result is written as a single snapshot instead of one journal record
+     * per row. Returns the number of dimensions touched.
+     */
+    public synchronized int importAll(Map<String, LinkedHashMap<String, Location>> byDim) {
+        Map<Identifier, DimensionSnapshot> merged = new HashMap<>();
+        for (Map.Entry<String, LinkedHashMap<String, Location>> e : byDim.entrySet()) {
+            Identifier id = Identifier.tryParse(e.getKey());
+            if (id == null || e.getValue().isEmpty()) continue;
+            LinkedHashMap<String, Location> byName = new LinkedHashMap<>();
+            for (Location l : snapshot(id).locations()) LocationsStorage.put(byName, l);
+            for (Location l : e.getValue().values()) {
+                // an existing name keeps its identity, as an edit would
+                Location old = byName.get(Location.nameKey(l.name));
+                LocationsStorage.put(byName, old == null ? l : l.asEditOf(old));
+            }
+            merged.put(id, DimensionSnapshot.of(byName.values()));
         }
-        return null;
+        if (merged.isEmpty()) return 0;
+        Map<Identifier, DimensionSnapshot> next = new HashMap<>(dims.get());
+        next.putAll(merged);
+        dims.set(Collections.unmodifiableMap(next));
+        for (Identifier id : merged.keySet()) compact(id);
+        return merged.size();
+    }
+
+    /** Where /location import and export read and write, or null if the name escapes it. */
+    public static Path transferFile(String name) {
+        return LocationsTransfer.resolve(DIR.resolve("transfer"), name);
+    }
+
+    private void publish(Identifier dimensionId, DimensionSnapshot snap) {
+        Map<Identifier, DimensionSnapshot> next = new HashMap<>(dims.get());
+        next.put(dimensionId, snap);
+        dims.set(Collections.unmodifiableMap(next));
     }
 
     /* ----------------- Persistence ----------------- */
 
-    public synchronized void load() {
+    /**
+     * Resets to the given config. Dimensions are not read here but on first
+     * use; an old single-file store is split into per-dimension files first.
+     */
+    public synchronized void load(LocationsConfig config) {
+        this.config = config;
+        storage.setBinary("binary".equalsIgnoreCase(config.storeFormat));
+        dims.set(Map.of());
+        dirty.clear();
+        journaled.clear();
+        unreadable.clear();
+        stopWatching();
         try {
-            if (!Files.exists(FILE)) {
-                Files.createDirectories(FILE.getParent());
-                return;
+            int migrated = storage.migrateLegacy();
+            if (migrated > 0) System.err.println("[locations] Split locations store into " + migrated + " dimension files");
+        } catch (IOException ioe) {
+            System.err.println("[locations] Failed to migrate locations store: " + ioe);
+        }
+        if (config.hotReload) {
+            watcher = new LocationsWatcher(storage, this, reloads::add);
+            try {
+                watcher.start();
+            } catch (IOException ioe) {
+                System.err.println("[locations] Failed to watch location files, hot reload is off: " + ioe);
+                watcher = null;
             }
-            try (BufferedReader reader = Files.newBufferedReader(FILE, StandardCharsets.UTF_8)) {
-                Map<String, List<StoredLocation>> flat = GSON.fromJson(reader, MAP_TYPE);
-                byDim.clear();
-                if (flat != null) {
-                    for (Map.Entry<String, List<StoredLocation>> e : flat.entrySet()) {
-                        List<Location> list = new ArrayList<>();
-                        for (StoredLocation s : e.getValue()) {
-                            Location.Shape shape;
-                            try {
-                                shape = s.shape == null ? Location.Shape.CIRCLE
-                                        : Location.Shape.valueOf(s.shape.toUpperCase(Locale.ROOT));
-                            } catch (Exception ex) {
-                                shape = Location.Shape.CIRCLE;
-                            }
-                            list.add(new Location(
-                                    s.name,
-                                    new BlockPos(s.x, s.y, s.z),
-                                    s.radius,
-                                    s.color == 0 ? -1 : s.color,
-                                    shape,
-                                    s.fancy
-                            ));
-                        }
-                        byDim.put(e.getKey(), list);
-                    }
+        }
+    }
+
+    /** Stops picking up outside edits, e.g. when the server stops. */
+    public synchronized void stopWatching() {
+        if (watcher != null) watcher.stop();
+        watcher = null;
+        reloads.clear();
+    }
+
+    /**
+     * Applies outside edits the watcher found, once per server tick. Only
+     * the names that changed in the files are touched, each through the same
+     * incremental update as an in-game edit. A name also edited in game since
+     * the files were read keeps the in-game version, which is newer and is
+     * saved as usual. Nothing is written back, as the files already hold the
+     * result, except that an edited snapshot is followed by a compaction so
+     * the journal it replaced is gone.
+     */
+    public synchronized void applyReloads() {
+        for (LocationsWatcher.Reload r; (r = reloads.poll()) != null; ) {
+            DimensionSnapshot live = dims.get().get(r.dimension);
+            // unloaded since; it is read afresh on next use
+            if (live == null) continue;
+            // files that failed to load read again: keep what was added in game
+            // meanwhile and save the two together
+            boolean recovered = unreadable.remove(r.dimension);
+            // edited in game after the watcher read the files
+            boolean raced = live != r.base;
+            DimensionSnapshot next = live;
+            if (!recovered) {
+                for (String name : r.removed) {
+                    if (!raced || !editedSince(r.base, live, name)) next = next.without(name);
                 }
             }
-        } catch (IOException ioe) {
-            System.err.println("[locations] Failed to load config: " + ioe);
+            int changed = live.locations().size() - next.locations().size();
+            for (Location l : r.upserts) {
+                if (raced && editedSince(r.base, live, l.name)) continue;
+                Location old = next.find(l.name);
+                if (old != null && old.sameData(l)) continue;
+                // an edit, like one made in game: presence and cooldowns stay with the location
+                next = next.with(old == null ? l : l.asEditOf(old));
+                changed++;
+            }
+            if (next != live) publish(r.dimension, next);
+            // the files' journal was left out, so it must not be replayed again
+            if (r.compact || recovered) compact(r.dimension);
+            if (next == live) continue;
+            System.err.println("[locations] Reloaded " + r.dimension + " from disk: " + changed + " location(s) changed");
         }
     }
 
-    public synchronized void save() {
+    // whether the named location was added, removed or changed between two snapshots
+    private static boolean editedSince(DimensionSnapshot base, DimensionSnapshot live, String name) {
+        Location before = base.find(name), after = live.find(name);
+        return before == null ? after != null : after == null || !before.sameData(after);
+    }
+
+    // for the watcher thread
+    DimensionSnapshot loadedSnapshot(Identifier dimensionId) {
+        return dims.get().get(dimensionId);
+    }
+
+    Set<Identifier> loadedDimensions() {
+        return dims.get().keySet();
+    }
+
+    void flushWrites() {
+        saver.flush();
+    }
+
+    private synchronized DimensionSnapshot loadDimension(Identifier dimensionId) {
+        DimensionSnapshot snap = dims.get().get(dimensionId);
+        if (snap != null) return snap;
+        String dim = dimensionId.toString();
+        // an evicted dimension may still be on its way to disk
+        saver.flush(dim);
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        long start = System.nanoTime();
+        snap = DimensionSnapshot.EMPTY;
         try {
-            Files.createDirectories(FILE.getParent());
-            Map<String, List<StoredLocation>> flat = new HashMap<>();
-            for (Map.Entry<String, List<Location>> e : byDim.entrySet()) {
-                List<StoredLocation> out = new ArrayList<>();
-                for (Location l : e.getValue()) {
-                    StoredLocation s = new StoredLocation();
-                    s.name = l.name;
-                    s.x = l.center.getX();
-                    s.y = l.center.getY();
-                    s.z = l.center.getZ();
-                    s.radius = l.radius;
-                    s.color = l.colorRgb;
-                    s.shape = l.shape.name();
-                    s.fancy = l.fancy;
-                    out.add(s);
-                }
-                flat.put(e.getKey(), out);
-            }
-            try (BufferedWriter w = Files.newBufferedWriter(FILE, StandardCharsets.UTF_8)) {
-                GSON.toJson(flat, MAP_TYPE, w);
+            LocationsStorage.Loaded loaded = storage.read(dim);
+            snap = DimensionSnapshot.of(loaded.byName.values());
+            publish(dimensionId, snap);
+            LocationsMetrics.get().recordLoad(loaded.bytes, System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.operation = "load";
+                event.dimension = dim;
+                event.bytes = loaded.bytes;
+                event.commit();
             }
-        } catch (IOException ioe) {
-            System.err.println("[locations] Failed to save config: " + ioe);
+            // fold a replayed journal (and any torn tail) into a fresh snapshot,
+            // and rewrite data found only in the other format in the configured one
+            if (loaded.journalRecords > 0 || loaded.converted) compact(dimensionId);
+        } catch (IOException | RuntimeException e) {
+            // e.g. a hand-edited file that no longer parses; this runs in the world
+            // tick, so carry on without the dimension's locations and keep the file
+            System.err.println("[locations] Failed to load locations for " + dim
+                    + ", leaving its files untouched until they load: " + e);
+            unreadable.add(dimensionId);
+            publish(dimensionId, snap);
+        }
+        return snap;
+    }
+
+    /** Writes out and forgets a dimension whose world unloaded; it is read again if used later. */
+    public synchronized void unload(Identifier dimensionId) {
+        if (!dims.get().containsKey(dimensionId)) return;
+        if (dirty.contains(dimensionId)) compact(dimensionId);
+        // read again on next use
+        unreadable.remove(dimensionId);
+        Map<Identifier, DimensionSnapshot> next = new HashMap<>(dims.get());
+        next.remove(dimensionId);
+        dims.set(Collections.unmodifiableMap(next));
+    }
+
+    private void changed(Identifier dimensionId, Location added, String removedName) {
+        dirty.add(dimensionId);
+        if (!config.journal || unreadable.contains(dimensionId)) return;
+        String dim = dimensionId.toString();
+        saver.append(dim, removedName == null ? LocationsStorage.addRecord(dim, added)
+                : added == null ? LocationsStorage.removeRecord(dim, removedName)
+                : LocationsStorage.renameRecord(dim, removedName, added));
+        journaled.merge(dimensionId, 1, Integer::sum);
+    }
+
+    /**
+     * Called once per server tick. Without the journal, hands a snapshot of
+     * each changed dimension to the background saver, so a burst of edits
+     * becomes a single write and untouched dimensions are never rewritten.
+     * With the journal, changes are already on their way to disk and a
+     * dimension's snapshot is only rewritten once its journal grows past
+     * journalCompactRecords.
+     */
+    public synchronized void saveIfDirty() {
+        if (dirty.isEmpty()) return;
+        for (Identifier id : List.copyOf(dirty)) {
+            if (config.journal && journaled.getOrDefault(id, 0) < config.journalCompactRecords) continue;
+            compact(id);
         }
     }
 
-    private static final class StoredLocation {
-        String name;
-        int x;
-        int y;
-        int z;
-        int radius;
-        int color;     // -1 or 0 means default
-        String shape;  // "CIRCLE" or "SQUARE"
-        boolean fancy; // center-screen title
+    /** Saves now and waits until the files are written. */
+    public synchronized void save() {
+        dirty.addAll(dims.get().keySet());
+        flush();
+    }
+
+    /** Writes a snapshot of every changed dimension and blocks until everything queued is on disk. */
+    public synchronized void flush() {
+        for (Identifier id : List.copyOf(dirty)) compact(id);
+        saver.flush();
+    }
+
+    private void compact(Identifier dimensionId) {
+        // stays dirty, so it is saved once the files read again
+        if (unreadable.contains(dimensionId)) return;
+        dirty.remove(dimensionId);
+        journaled.remove(dimensionId);
+        saver.submit(dimensionId.toString(), snapshot(dimensionId).locations());
+    }
+
+    /**
+     * The loaded dimensions' locations, keyed by dimension id, for export.
+     * Cheap, so it runs on the server thread; the export thread then adds
+     * the rest with {@link #exportUnloaded}. Loaded dimensions without
+     * locations map to an empty list, so they are not read from disk either.
+     */
+    synchronized Map<String, List<Location>> exportLoaded() {
+        Map<String, List<Location>> copy = new TreeMap<>();
+        for (Map.Entry<Identifier, DimensionSnapshot> e : dims.get().entrySet()) {
+            copy.put(e.getKey().toString(), e.getValue().locations());
+        }
+        return copy;
+    }
+
+    /**
+     * Completes {@code loaded} from {@link #exportLoaded} with every stored
+     * dimension that was not loaded, read from disk without being kept
+     * loaded, and drops the empty ones. Blocks on disk, so call it off the
+     * server thread.
+     */
+    Map<String, List<Location>> exportUnloaded(Map<String, List<Location>> loaded) {
+        // dimensions unloaded just before may still be on their way to disk
+        flushWrites();
+        Map<String, List<Location>> copy = new TreeMap<>(loaded);
+        try {
+            for (String dim : storage.storedDimensions()) {
+                if (copy.containsKey(dim) || Identifier.tryParse(dim) == null) continue;
+                copy.put(dim, List.copyOf(storage.read(dim).byName.values()));
+            }
+        } catch (IOException ioe) {
+            System.err.println("[locations] Failed to read unloaded dimensions for export: " + ioe);
+        }
+        copy.values().removeIf(List::isEmpty);
+        return Collections.unmodifiableMap(copy);
     }
 }
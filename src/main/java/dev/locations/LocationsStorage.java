@@ -0,0 +1,513 @@
+package dev.locations;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import net.minecraft.util.math.BlockPos;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * On-disk format of the locations, one set of files per dimension under
+ * {@code dims/<namespace>/<path>}: a full snapshot, either JSON ({@code .json})
+ * or binary ({@code .bin}), plus an append-only journal ({@code .journal}) of
+ * changes made since that snapshot was written. Loading a dimension replays
+ * its journal on top of its snapshot; compaction writes a new snapshot and
+ * empties the journal. The single-file layout of older versions
+ * ({@code locations.json}/{@code .bin}/{@code .journal}) is split up once by
+ * {@link #migrateLegacy()}.
+ */
+final class LocationsStorage {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    // one record per line, so no pretty printing
+    private static final Gson LINE_GSON = new Gson();
+    private static final Type MAP_TYPE = new TypeToken<Map<String, List<StoredLocation>>>(){}.getType();
+
+    private final Path dimsDir;
+    private final Path legacyFile;
+    private final Path legacyBinFile;
+    private final Path legacyJournal;
+    // open journals per dimension; saver thread only
+    private final Map<String, BufferedWriter> journalOut = new HashMap<>();
+    // snapshot format; read by the saver thread
+    private volatile boolean binary;
+    // size and modification time of each dimension file as this class last
+    // read or wrote it, null for a file it deleted; lets the file watcher
+    // tell outside edits from the mod's own saves
+    private final Map<Path, long[]> seen = new ConcurrentHashMap<>();
+    private static final long[] ABSENT = new long[0];
+
+    LocationsStorage(Path dir) {
+        this.dimsDir = dir.resolve("dims");
+        this.legacyFile = dir.resolve("locations.json");
+        this.legacyBinFile = dir.resolve("locations.bin");
+        this.legacyJournal = dir.resolve("locations.journal");
+    }
+
+    void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    /** Result of {@link #read}: one dimension's locations keyed by {@link Location#nameKey}, in list order. */
+    static final class Loaded {
+        final LinkedHashMap<String, Location> byName = new LinkedHashMap<>();
+        // journal records replayed on top of the snapshot, including a torn tail
+        int journalRecords;
+        // the last journal record was cut short, e.g. read mid-append
+        boolean tornJournal;
+        // a journal was there but not replayed, see read(String, boolean)
+        boolean journalSkipped;
+        // read from the other snapshot format than the configured one
+        boolean converted;
+        // size of the snapshot and journal files read
+        long bytes;
+    }
+
+    // "minecraft:the_nether" -> dims/minecraft/the_nether; the path may hold '/'
+    private Path base(String dim) {
+        int colon = dim.indexOf(':');
+        String ns = colon < 0 ? "minecraft" : dim.substring(0, colon);
+        return dimsDir.resolve(ns).resolve(dim.substring(colon + 1));
+    }
+
+    private static Path withExt(Path base, String ext) {
+        return base.resolveSibling(base.getFileName() + ext);
+    }
+
+    Loaded read(String dim) throws IOException {
+        return read(dim, true);
+    }
+
+    /**
+     * One dimension's files, with its journal replayed on top of the snapshot
+     * unless {@code withJournal} is false.
+     */
+    Loaded read(String dim, boolean withJournal) throws IOException {
+        Loaded out = new Loaded();
+        Path base = base(dim);
+        Path json = withExt(base, ".json");
+        Path bin = withExt(base, ".bin");
+        Path journal = withExt(base, ".journal");
+        // prefer the configured format, fall back to the other one so switching keeps data
+        Path first = binary ? bin : json;
+        Path other = binary ? json : bin;
+        Path source = Files.exists(first) ? first : Files.exists(other) ? other : null;
+        // stamped before reading, so an edit landing mid-read is still seen as new
+        stamp(json);
+        stamp(bin);
+        stamp(journal);
+        Map<String, List<Location>> lists = source == bin ? BinaryLocationsFormat.read(bin)
+                : source == json ? readJson(json)
+                : Map.of();
+        for (List<Location> list : lists.values()) {
+            for (Location l : list) put(out.byName, l);
+        }
+        out.converted = source == other;
+        if (source != null) out.bytes = Files.size(source);
+        if (Files.exists(journal)) {
+            if (withJournal) {
+                out.bytes += Files.size(journal);
+                replay(journal, out);
+            } else {
+                out.journalSkipped = true;
+            }
+        }
+        return out;
+    }
+
+    /** Dimensions that have any files on disk. */
+    Set<String> storedDimensions() throws IOException {
+        Set<String> out = new TreeSet<>();
+        if (!Files.isDirectory(dimsDir)) return out;
+        try (var files = Files.walk(dimsDir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String dim = dimensionOf(p);
+                if (dim != null && Files.isRegularFile(p)) out.add(dim);
+            }
+        }
+        return out;
+    }
+
+    /** Directory holding the per-dimension files. */
+    Path dimsDir() {
+        return dimsDir;
+    }
+
+    /** The dimension a snapshot or journal path under {@link #dimsDir()} belongs to, or null for any other path. */
+    String dimensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return null;
+        String ext = name.substring(dot);
+        if (!ext.equals(".json") && !ext.equals(".bin") && !ext.equals(".journal")) return null;
+        if (!file.startsWith(dimsDir)) return null;
+        Path rel = dimsDir.relativize(file.resolveSibling(name.substring(0, dot)));
+        if (rel.getNameCount() < 2) return null;
+        StringBuilder path = new StringBuilder();
+        for (int i = 1; i < rel.getNameCount(); i++) {
+            if (i > 1) path.append('/');
+            path.append(rel.getName(i));
+        }
+        return rel.getName(0) + ":" + path;
+    }
+
+    /**
+     * Whether the dimension's snapshot files (not its journal) are as this
+     * class last read or wrote them.
+     */
+    boolean snapshotUnchangedSinceSeen(String dim) throws IOException {
+        Path base = base(dim);
+        return unchangedSinceSeen(withExt(base, ".json")) && unchangedSinceSeen(withExt(base, ".bin"));
+    }
+
+    /**
+     * Whether all of a dimension's files are as this class last read or
+     * wrote them, i.e. nothing else touched them since. Files it never saw
+     * count as unchanged while they don't exist.
+     */
+    boolean unchangedSinceSeen(String dim) throws IOException {
+        Path base = base(dim);
+        for (String ext : new String[] { ".json", ".bin", ".journal" }) {
+            if (!unchangedSinceSeen(withExt(base, ext))) return false;
+        }
+        return true;
+    }
+
+    private boolean unchangedSinceSeen(Path p) throws IOException {
+        long[] was = seen.get(p);
+        long[] now = stampOf(p);
+        return was == null ? now == ABSENT : Arrays.equals(was, now);
+    }
+
+    private void stamp(Path p) throws IOException {
+        seen.put(p, stampOf(p));
+    }
+
+    private static long[] stampOf(Path p) throws IOException {
+        BasicFileAttributes a;
+        try {
+            a = Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return ABSENT;
+        }
+        return new long[] { a.size(), a.lastModifiedTime().to(TimeUnit.NANOSECONDS) };
+    }
+
+    /**
+     * Splits an old single-file store (snapshot plus journal) into per-dimension
+     * files and renames the old files to {@code *.migrated}. Runs on the
+     * calling thread before the saver has anything to do. Returns the number
+     * of dimensions written.
+     */
+    int migrateLegacy() throws IOException {
+        Path first = binary ? legacyBinFile : legacyFile;
+        Path other = binary ? legacyFile : legacyBinFile;
+        Path source = Files.exists(first) ? first : Files.exists(other) ? other : null;
+        if (source == null && !Files.exists(legacyJournal)) return 0;
+        Map<String, List<Location>> lists = source == legacyBinFile ? BinaryLocationsFormat.read(legacyBinFile)
+                : source == legacyFile ? readJson(legacyFile)
+                : Map.of();
+        Map<String, LinkedHashMap<String, Location>> byDim = new HashMap<>();
+        for (Map.Entry<String, List<Location>> e : lists.entrySet()) {
+            LinkedHashMap<String, Location> byName = byDim.computeIfAbsent(e.getKey(), k -> new LinkedHashMap<>());
+            for (Location l : e.getValue()) put(byName, l);
+        }
+        if (Files.exists(legacyJournal)) replayLegacy(byDim);
+        for (Map.Entry<String, LinkedHashMap<String, Location>> e : byDim.entrySet()) {
+            writeSnapshot(e.getKey(), List.copyOf(e.getValue().values()));
+        }
+        for (Path p : List.of(legacyFile, legacyBinFile, legacyJournal)) {
+            if (Files.exists(p)) Files.move(p, p.resolveSibling(p.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return byDim.size();
+    }
+
+    static Map<String, List<Location>> readJson(Path path) throws IOException {
+        Map<String, List<Location>> byDim = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Map<String, List<StoredLocation>> flat = GSON.fromJson(reader, MAP_TYPE);
+            if (flat != null) {
+                for (Map.Entry<String, List<StoredLocation>> e : flat.entrySet()) {
+                    List<Location> list = new ArrayList<>();
+                    for (StoredLocation s : e.getValue()) list.add(s.toLocation());
+                    byDim.put(e.getKey(), list);
+                }
+            }
+        }
+        return byDim;
+    }
+
+    // Adds at the end like a list append; a case-insensitive duplicate is replaced
+    // where it stands, as in the live snapshot.
+    static void put(LinkedHashMap<String, Location> byName, Location loc) {
+        byName.put(Location.nameKey(loc.name), loc);
+    }
+
+    // as DimensionSnapshot.rename: in place, children follow the new name
+    static void rename(LinkedHashMap<String, Location> byName, String oldName, Location loc) {
+        String oldKey = Location.nameKey(oldName);
+        if (!byName.containsKey(oldKey)) {
+            put(byName, loc);
+            return;
+        }
+        List<Location> list = new ArrayList<>(byName.values());
+        byName.clear();
+        for (Location l : list) {
+            if (Location.nameKey(l.name).equals(oldKey)) l = loc;
+            else if (l.parentName != null && Location.nameKey(l.parentName).equals(oldKey)) l = l.withParent(loc.name);
+            byName.put(Location.nameKey(l.name), l);
+        }
+    }
+
+    private static void replay(Path journal, Loaded out) throws IOException {
+        int[] torn = new int[1];
+        out.journalRecords = replay(journal, r -> out.byName, torn);
+        out.tornJournal = torn[0] > 0;
+    }
+
+    // the old shared journal names the dimension in every record
+    private void replayLegacy(Map<String, LinkedHashMap<String, Location>> byDim) throws IOException {
+        replay(legacyJournal, r -> byDim.computeIfAbsent(r.dim, k -> new LinkedHashMap<>()), new int[1]);
+    }
+
+    // torn[0] is set to 1 if the last record was cut short
+    private static int replay(Path journal, Function<JournalRecord, LinkedHashMap<String, Location>> target,
+                              int[] torn) throws IOException {
+        // decode leniently: a torn tail may end in half a UTF-8 sequence
+        List<String> lines = new String(Files.readAllBytes(journal), StandardCharsets.UTF_8).lines().toList();
+        int applied = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) continue;
+            JournalRecord r = parseRecord(line);
+            if (r == null) {
+                if (i == lines.size() - 1) {
+                    // a crash mid-append leaves a torn last line; everything before it is good
+                    System.err.println("[locations] Ignoring truncated last journal record in " + journal.getFileName());
+                    torn[0] = 1;
+                } else {
+                    System.err.println("[locations] Skipping unreadable journal record at line " + (i + 1) + " of " + journal.getFileName());
+                }
+                applied++;
+                continue;
+            }
+            LinkedHashMap<String, Location> byName = target.apply(r);
+            switch (r.op) {
+                case "add" -> {
+                    if (r.loc == null) continue;
+                    // upsert, so replaying over a snapshot that already has it is harmless
+                    put(byName, r.loc.toLocation());
+                }
+                case "remove" -> {
+                    if (r.name != null) byName.remove(Location.nameKey(r.name));
+                }
+                case "rename" -> {
+                    if (r.name == null || r.loc == null) continue;
+                    rename(byName, r.name, r.loc.toLocation());
+                }
+                default -> System.err.println("[locations] Unknown journal op: " + r.op);
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    private static JournalRecord parseRecord(String line) {
+        try {
+            JournalRecord r = LINE_GSON.fromJson(line, JournalRecord.class);
+            return r == null || r.dim == null || r.op == null ? null : r;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    static String addRecord(String dim, Location loc) {
+        JournalRecord r = new JournalRecord();
+        r.op = "add";
+        r.dim = dim;
+        r.loc = StoredLocation.of(loc);
+        return LINE_GSON.toJson(r);
+    }
+
+    static String renameRecord(String dim, String oldName, Location loc) {
+        JournalRecord r = new JournalRecord();
+        r.op = "rename";
+        r.dim = dim;
+        r.name = oldName;
+        r.loc = StoredLocation.of(loc);
+        return LINE_GSON.toJson(r);
+    }
+
+    static String removeRecord(String dim, String name) {
+        JournalRecord r = new JournalRecord();
+        r.op = "remove";
+        r.dim = dim;
+        r.name = name;
+        return LINE_GSON.toJson(r);
+    }
+
+    /** Returns the number of characters appended, which is close enough to bytes for stats. */
+    long append(String dim, List<String> records) throws IOException {
+        BufferedWriter out = journalOut.get(dim);
+        if (out == null) {
+            Path journal = withExt(base(dim), ".journal");
+            Files.createDirectories(journal.getParent());
+            out = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            journalOut.put(dim, out);
+        }
+        long written = 0;
+        for (String r : records) {
+            out.write(r);
+            out.newLine();
+            written += r.length() + 1;
+        }
+        out.flush();
+        stamp(withExt(base(dim), ".journal"));
+        return written;
+    }
+
+    // Writes next to the target, then renames over it so a crash mid-write
+    // never leaves a truncated snapshot behind. The journal is only emptied
+    // once the snapshot that covers it is in place. An empty dimension has
+    // its files removed. Returns the snapshot size.
+    long writeSnapshot(String dim, List<Location> locations) throws IOException {
+        Path base = base(dim);
+        Path target = withExt(base, binary ? ".bin" : ".json");
+        Path stale = withExt(base, binary ? ".json" : ".bin");
+        long size = 0;
+        if (locations.isEmpty()) {
+            Files.deleteIfExists(target);
+        } else {
+            Files.createDirectories(target.getParent());
+            Path tmp = withExt(target, ".tmp");
+            if (binary) {
+                BinaryLocationsFormat.write(tmp, Map.of(dim, locations));
+            } else {
+                writeJson(tmp, Map.of(dim, locations));
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            size = Files.size(target);
+        }
+        BufferedWriter out = journalOut.remove(dim);
+        if (out != null) out.close();
+        Files.deleteIfExists(withExt(base, ".journal"));
+        // the other format would otherwise be picked up again after a format switch back
+        Files.deleteIfExists(stale);
+        stamp(target);
+        stamp(stale);
+        stamp(withExt(base, ".journal"));
+        return size;
+    }
+
+    static void writeJson(Path path, Map<String, List<Location>> snapshot) throws IOException {
+        Map<String, List<StoredLocation>> flat = new HashMap<>();
+        for (Map.Entry<String, List<Location>> e : snapshot.entrySet()) {
+            List<StoredLocation> out = new ArrayList<>();
+            for (Location l : e.getValue()) out.add(StoredLocation.of(l));
+            flat.put(e.getKey(), out);
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            GSON.toJson(flat, MAP_TYPE, w);
+        }
+    }
+
+    static class StoredLocation {
+        String name;
+        int x;
+        int y;
+        int z;
+        int radius;
+        int color;     // -1 or 0 means default
+        String shape;  // "CIRCLE", "SQUARE" or "POLYGON"
+        boolean fancy; // center-screen title
+        int[] points;  // polygon only: x0, z0, x1, z1, ...
+        String parent; // name of the enclosing location, if nested
+        Integer minY;  // inclusive vertical bounds, absent when unbounded
+        Integer maxY;
+
+        static StoredLocation of(Location l) {
+            StoredLocation s = new StoredLocation();
+            s.set(l);
+            return s;
+        }
+
+        void set(Location l) {
+            name = l.name;
+            x = l.center.getX();
+            y = l.center.getY();
+            z = l.center.getZ();
+            radius = l.radius;
+            color = l.colorRgb;
+            shape = l.shape.name();
+            fancy = l.fancy;
+            points = l.points;
+            parent = l.parentName;
+            minY = l.minY == Integer.MIN_VALUE ? null : l.minY;
+            maxY = l.maxY == Integer.MAX_VALUE ? null : l.maxY;
+        }
+
+        Location toLocation() {
+            Location.Shape parsed;
+            try {
+                parsed = shape == null ? Location.Shape.CIRCLE
+                        : Location.Shape.valueOf(shape.toUpperCase(Locale.ROOT));
+            } catch (Exception ex) {
+                parsed = Location.Shape.CIRCLE;
+            }
+            int rgb = color == 0 ? -1 : color;
+            Location loc = null;
+            if (parsed == Location.Shape.POLYGON) {
+                String error = Location.checkPolygon(points);
+                if (error == null) loc = Location.polygon(name, y, points, rgb, fancy);
+                // keep the entry rather than drop it; it can be fixed by hand
+                else System.err.println("[locations] Polygon '" + name + "' is invalid (" + error + "), loading it as a circle");
+            }
+            if (loc == null) {
+                loc = new Location(
+                        name,
+                        new BlockPos(x, y, z),
+                        Math.max(1, radius),
+                        rgb,
+                        parsed,
+                        fancy
+                );
+            }
+            if (parent != null) loc = loc.withParent(parent);
+            if (minY != null || maxY != null) {
+                int lo = minY == null ? Integer.MIN_VALUE : minY;
+                int hi = maxY == null ? Integer.MAX_VALUE : maxY;
+                if (lo <= hi) loc = loc.withHeight(lo, hi);
+                else System.err.println("[locations] '" + name + "' has minY above maxY, ignoring its height");
+            }
+            return loc;
+        }
+    }
+
+    private static final class JournalRecord {
+        String op;   // "add" (replaces by name), "remove" or "rename"
+        String dim;
+        String name; // remove and rename (the old name)
+        StoredLocation loc; // add and rename
+    }
+}
@@ -0,0 +1,297 @@
+package dev.locations;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import net.minecraft.util.Identifier;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Bulk import/export of locations as JSON lines or CSV (picked by a
+ * {@code .csv} extension). Rows use the {@link LocationsStorage.StoredLocation}
+ * schema plus a {@code dim} column, and are streamed one at a time so the
+ * file itself is never held in memory.
+ * <pre>
+ * {"dim":"minecraft:overworld","name":"Spawn","x":0,"y":64,"z":0,"radius":50,"color":-1,"shape":"CIRCLE","fancy":false}
+ *
+ * dim,name,x,y,z,radius,color,shape,fancy,points,parent,minY,maxY
+ * minecraft:overworld,Spawn,0,64,0,50,#FFAA00,circle,true,,,,
+ * minecraft:overworld,Aldmoor,0,64,0,0,,polygon,false,10 10;90 10;90 70;10 70,,,
+ * minecraft:overworld,Market District,40,64,30,12,,square,false,,Aldmoor,,
+ * minecraft:overworld,Old Mine,40,20,30,40,,square,false,,,-40,50
+ * </pre>
+ * Import also accepts a single top-level JSON array of rows. A missing dim
+ * means the importing player's dimension; an empty color means the default.
+ * Polygons give their vertices in {@code points} and need no radius;
+ * {@code parent} names the enclosing location; empty {@code minY}/{@code maxY}
+ * mean no floor/ceiling.
+ */
+final class LocationsTransfer {
+    private static final Gson GSON = new Gson();
+    private static final String[] CSV_COLUMNS = {"dim", "name", "x", "y", "z", "radius", "color", "shape", "fancy", "points", "parent", "minY", "maxY"};
+    private static final int MAX_REPORTED = 5;
+
+    private LocationsTransfer() {}
+
+    static final class Row extends LocationsStorage.StoredLocation {
+        String dim;
+    }
+
+    /** Result of {@link #read}: rows per dimension keyed by {@link Location#nameKey}, last row wins. */
+    static final class Imported {
+        final Map<String, LinkedHashMap<String, Location>> byDim = new LinkedHashMap<>();
+        int rows;
+        int skipped;
+    }
+
+    /** Resolves a file name inside {@code dir}, or null if it would escape it. */
+    static Path resolve(Path dir, String name) {
+        Path base = dir.toAbsolutePath().normalize();
+        Path p = base.resolve(name).normalize();
+        return p.startsWith(base) && !p.equals(base) ? p : null;
+    }
+
+    static Imported read(Path file, String defaultDim, int maxRadius) throws IOException {
+        Imported out = new Imported();
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (isCsv(file)) readCsv(r, out, defaultDim, maxRadius);
+            else readJson(r, out, defaultDim, maxRadius);
+        }
+        return out;
+    }
+
+    private static void readJson(BufferedReader r, Imported out, String defaultDim, int maxRadius) throws IOException {
+        JsonReader in = new JsonReader(r);
+        in.setLenient(true); // JSON lines: several top-level values
+        boolean array = in.peek() == JsonToken.BEGIN_ARRAY;
+        if (array) in.beginArray();
+        while (array ? in.hasNext() : in.peek() != JsonToken.END_DOCUMENT) {
+            int rowNo = out.rows + 1;
+            Row row;
+            try {
+                row = GSON.fromJson(in, Row.class);
+            } catch (JsonParseException e) {
+                // the stream position is unknown after a syntax error, so stop here
+                throw new IOException("row " + rowNo + ": " + e.getMessage(), e);
+            }
+            accept(out, row, rowNo, defaultDim, maxRadius);
+        }
+    }
+
+    private static void readCsv(BufferedReader r, Imported out, String defaultDim, int maxRadius) throws IOException {
+        String header = r.readLine();
+        if (header == null) return;
+        // columns may come in any order; unknown ones are ignored
+        Map<String, Integer> col = new HashMap<>();
+        List<String> names = splitCsv(header);
+        for (int i = 0; i < names.size(); i++) col.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        if (!col.containsKey("name")) throw new IOException("CSV header must name its columns, e.g. " + String.join(",", CSV_COLUMNS));
+
+        String line;
+        while ((line = r.readLine()) != null) {
+            if (line.isBlank()) continue;
+            int rowNo = out.rows + 1;
+            List<String> f = splitCsv(line);
+            Row row = new Row();
+            try {
+                row.dim = field(f, col, "dim");
+                row.name = field(f, col, "name");
+                row.x = intField(f, col, "x", 0);
+                row.y = intField(f, col, "y", 64);
+                row.z = intField(f, col, "z", 0);
+                row.radius = intField(f, col, "radius", 0);
+                String color = field(f, col, "color");
+                row.color = color == null ? -1
+                        : color.startsWith("#") ? Integer.parseInt(color.substring(1), 16)
+                        : Integer.parseInt(color);
+                row.shape = field(f, col, "shape");
+                row.fancy = Boolean.parseBoolean(field(f, col, "fancy"));
+                row.points = parsePoints(field(f, col, "points"));
+                row.parent = field(f, col, "parent");
+                row.minY = integerField(f, col, "miny");
+                row.maxY = integerField(f, col, "maxy");
+            } catch (NumberFormatException e) {
+                out.rows++;
+                skip(out, rowNo, "bad number " + e.getMessage());
+                continue;
+            }
+            accept(out, row, rowNo, defaultDim, maxRadius);
+        }
+    }
+
+    private static void accept(Imported out, Row row, int rowNo, String defaultDim, int maxRadius) {
+        out.rows++;
+        if (row == null || row.name == null || row.name.isBlank()) {
+            skip(out, rowNo, "missing name");
+            return;
+        }
+        if ("polygon".equalsIgnoreCase(row.shape)) {
+            String error = Location.checkPolygon(row.points);
+            if (error != null) {
+                skip(out, rowNo, error);
+                return;
+            }
+        } else if (row.radius < 1 || row.radius > maxRadius) {
+            skip(out, rowNo, "radius must be 1.." + maxRadius);
+            return;
+        }
+        if (row.minY != null && row.maxY != null && row.minY > row.maxY) {
+            skip(out, rowNo, "minY above maxY");
+            return;
+        }
+        String dim = row.dim == null || row.dim.isBlank() ? defaultDim : row.dim.trim();
+        Identifier id = Identifier.tryParse(dim);
+        if (id == null) {
+            skip(out, rowNo, "invalid dimension " + dim);
+            return;
+        }
+        row.name = row.name.trim();
+        LocationsStorage.put(out.byDim.computeIfAbsent(id.toString(), k -> new LinkedHashMap<>()), row.toLocation());
+    }
+
+    private static void skip(Imported out, int rowNo, String why) {
+        if (++out.skipped <= MAX_REPORTED) {
+            System.err.println("[locations] Import: skipping row " + rowNo + ": " + why);
+        }
+    }
+
+    /** Writes every location and returns how many rows were written. */
+    static int write(Path file, Map<String, List<Location>> snapshot) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int rows = 0;
+        boolean csv = isCsv(file);
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            JsonWriter json = new JsonWriter(w);
+            json.setLenient(true); // one value per line
+            if (csv) {
+                w.write(String.join(",", CSV_COLUMNS));
+                w.newLine();
+            }
+            Row row = new Row();
+            for (Map.Entry<String, List<Location>> e : snapshot.entrySet()) {
+                for (Location l : e.getValue()) {
+                    if (csv) {
+                        writeCsv(w, e.getKey(), l);
+                    } else {
+                        row.dim = e.getKey();
+                        row.set(l);
+                        GSON.toJson(row, Row.class, json);
+                    }
+                    w.newLine();
+                    rows++;
+                }
+            }
+            json.flush();
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return rows;
+    }
+
+    private static void writeCsv(BufferedWriter w, String dim, Location l) throws IOException {
+        w.write(csv(dim));
+        w.write(',');
+        w.write(csv(l.name));
+        w.write("," + l.center.getX() + "," + l.center.getY() + "," + l.center.getZ() + "," + l.radius + ",");
+        if (l.colorRgb != -1) w.write(String.format(Locale.ROOT, "#%06X", l.colorRgb));
+        w.write("," + l.shape.name().toLowerCase(Locale.ROOT) + "," + l.fancy + ",");
+        if (l.points != null) {
+            for (int i = 0; i < l.points.length; i += 2) {
+                if (i > 0) w.write(';');
+                w.write(l.points[i] + " " + l.points[i + 1]);
+            }
+        }
+        w.write(',');
+        if (l.parentName != null) w.write(csv(l.parentName));
+        w.write(',');
+        if (l.minY != Integer.MIN_VALUE) w.write(Integer.toString(l.minY));
+        w.write(',');
+        if (l.maxY != Integer.MAX_VALUE) w.write(Integer.toString(l.maxY));
+    }
+
+    // "x z;x z;..."
+    private static int[] parsePoints(String s) {
+        if (s == null) return null;
+        String[] pairs = s.split(";");
+        int[] out = new int[pairs.length * 2];
+        for (int i = 0; i < pairs.length; i++) {
+            String[] xz = pairs[i].trim().split("\\s+");
+            if (xz.length != 2) throw new NumberFormatException("point '" + pairs[i].trim() + "'");
+            out[2 * i] = Integer.parseInt(xz[0]);
+            out[2 * i + 1] = Integer.parseInt(xz[1]);
+        }
+        return out;
+    }
+
+    private static boolean isCsv(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+    }
+
+    private static String field(List<String> f, Map<String, Integer> col, String name) {
+        Integer i = col.get(name);
+        if (i == null || i >= f.size()) return null;
+        String v = f.get(i).trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    private static int intField(List<String> f, Map<String, Integer> col, String name, int def) {
+        String v = field(f, col, name);
+        return v == null ? def : Integer.parseInt(v);
+    }
+
+    private static Integer integerField(List<String> f, Map<String, Integer> col, String name) {
+        String v = field(f, col, name);
+        return v == null ? null : Integer.valueOf(v);
+    }
+
+    private static String csv(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0 && s.equals(s.trim())) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    // One CSV line; fields may be quoted with "" as an escaped quote.
+    private static List<String> splitCsv(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    cur.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append(c);
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+}
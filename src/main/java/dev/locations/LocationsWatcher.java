@@ -0,0 +1,193 @@
+package dev.locations;
+
+import net.minecraft.util.Identifier;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the per-dimension files for edits made outside the game. When a
+ * loaded dimension's files change, they are read and compared with its live
+ * snapshot on the watcher thread, and only the differences are handed on,
+ * to be applied on the server thread. The mod's own saves leave the files
+ * exactly as {@link LocationsStorage} last saw them, so they are skipped
+ * without being read.
+ * <p>
+ * An edited snapshot file wins over the dimension's journal: the journal
+ * is not replayed on top of it, since its records predate the edit, and the
+ * dimension is compacted once the edit is applied, so the journal is not
+ * replayed on the next load either.
+ */
+final class LocationsWatcher {
+    // quiet time before a burst of events is acted on, so half-written files settle
+    private static final long SETTLE_MILLIS = 250;
+
+    /**
+     * What an outside edit changed in one dimension, relative to {@link #base},
+     * the snapshot that was live when the files were read.
+     */
+    static final class Reload {
+        final Identifier dimension;
+        final DimensionSnapshot base;
+        // names (as stored) no longer in the files
+        final List<String> removed = new ArrayList<>();
+        // locations new or different in the files
+        final List<Location> upserts = new ArrayList<>();
+        // the snapshot was edited and the journal left out; rewrite the files from the result
+        boolean compact;
+
+        Reload(Identifier dimension, DimensionSnapshot base) {
+            this.dimension = dimension;
+            this.base = base;
+        }
+
+        boolean isEmpty() {
+            return removed.isEmpty() && upserts.isEmpty() && !compact;
+        }
+    }
+
+    private final LocationsStorage storage;
+    private final LocationsState state;
+    private final Consumer<Reload> out;
+    private final Map<WatchKey, Path> dirs = new ConcurrentHashMap<>();
+    private volatile WatchService service;
+
+    LocationsWatcher(LocationsStorage storage, LocationsState state, Consumer<Reload> out) {
+        this.storage = storage;
+        this.state = state;
+        this.out = out;
+    }
+
+    void start() throws IOException {
+        Path root = storage.dimsDir();
+        Files.createDirectories(root);
+        service = FileSystems.getDefault().newWatchService();
+        register(root);
+        Thread thread = new Thread(this::run, "Locations Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        WatchService s = service;
+        service = null;
+        if (s == null) return;
+        try {
+            s.close();
+        } catch (IOException ignored) {
+            // the thread exits either way
+        }
+        dirs.clear();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchService s = service;
+                if (s == null) return;
+                Set<String> changed = new HashSet<>();
+                boolean overflow = false;
+                WatchKey key = s.take();
+                do {
+                    overflow |= drain(key, changed);
+                    key = s.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                if (overflow) {
+                    for (Identifier id : state.loadedDimensions()) changed.add(id.toString());
+                }
+                for (String dim : changed) check(dim);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // stopped
+        }
+    }
+
+    // collects the dimensions a key's events touch; true if events were lost
+    private boolean drain(WatchKey key, Set<String> changed) {
+        boolean overflow = false;
+        Path dir = dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                // a new namespace or nested path; files may already be in it
+                register(path);
+                overflow = true;
+                continue;
+            }
+            String dim = storage.dimensionOf(path);
+            if (dim != null) changed.add(dim);
+        }
+        if (!key.reset()) dirs.remove(key);
+        return overflow;
+    }
+
+    private void register(Path root) {
+        try (var tree = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) tree::iterator) {
+                if (!Files.isDirectory(dir)) continue;
+                dirs.put(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[locations] Failed to watch " + root + " for changes: " + e);
+        }
+    }
+
+    private void check(String dim) {
+        Identifier id = Identifier.tryParse(dim);
+        if (id == null) return;
+        // let queued saves land first, so they are recognised as ours
+        state.flushWrites();
+        DimensionSnapshot base = state.loadedSnapshot(id);
+        // unloaded dimensions are read afresh on first use anyway
+        if (base == null) return;
+        try {
+            if (storage.unchangedSinceSeen(dim)) return;
+            boolean edited = !storage.snapshotUnchangedSinceSeen(dim);
+            LocationsStorage.Loaded files = storage.read(dim, !edited);
+            // written to while being read (the read stamps the files first);
+            // that write's own event brings us back to a settled file
+            if (!storage.unchangedSinceSeen(dim)) return;
+            Reload reload = diff(id, base, files.byName);
+            // a name missing only because its record is half written is not a removal
+            if (files.tornJournal) reload.removed.clear();
+            reload.compact = files.journalSkipped;
+            if (!reload.isEmpty()) out.accept(reload);
+        } catch (IOException | RuntimeException e) {
+            // most likely caught mid-write; the write's own event brings us back
+            System.err.println("[locations] Failed to reload " + dim + ": " + e);
+        }
+    }
+
+    static Reload diff(Identifier dimension, DimensionSnapshot base, LinkedHashMap<String, Location> files) {
+        Reload reload = new Reload(dimension, base);
+        for (Location l : base.locations()) {
+            if (!files.containsKey(Location.nameKey(l.name))) reload.removed.add(l.name);
+        }
+        for (Location l : files.values()) {
+            Location old = base.find(l.name);
+            if (old == null || !old.sameData(l)) reload.upserts.add(l);
+        }
+        return reload;
+    }
+}
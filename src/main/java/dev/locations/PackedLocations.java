@@ -0,0 +1,95 @@
+package dev.locations;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Structure-of-arrays copy of one crowded grid bucket, so a {@link Kernel}
+ * can test circles and squares from flat arrays, several per instruction
+ * with the Vector API, instead of following each {@link Location} to its
+ * {@code BlockPos}. Built with the grid, so it
+ * changes whenever the dimension's snapshot does. Polygons are listed in
+ * {@link #other} and left to {@link Location} itself.
+ */
+final class PackedLocations {
+    static final int CIRCLE = 0, SQUARE = 1, OTHER = 2;
+    // below this a plain loop over the bucket is as fast
+    static final int MIN_SIZE = 8;
+
+    // VectorScanKernel if it was built in (-Pvector=true), the JVM has
+    // jdk.incubator.vector and -Dlocations.vector=false is not set;
+    // ScalarScanKernel otherwise
+    static final Kernel KERNEL = loadKernel();
+
+    final Location[] locations;
+    final int[] x, z, radius, minY, maxY, shape;
+    // indexes of the entries the kernel skips
+    final int[] other;
+
+    /**
+     * Evaluates a packed bucket. Both methods must agree exactly with
+     * {@link Location#contains(int, int, int)} and
+     * {@link Location#boundaryGap(int, int, int)} for circles and squares,
+     * and ignore {@link #other} entries.
+     */
+    interface Kernel {
+        /** Bit {@code i} set if entry {@code from + i} contains the position, for up to 64 entries. */
+        long contains(PackedLocations p, int from, int x, int y, int z);
+
+        /** Smallest of {@code gap} and every entry's boundary gap. */
+        long minGap(PackedLocations p, int x, int y, int z, long gap);
+
+        /** Short description for /location stats. */
+        String describe();
+    }
+
+    PackedLocations(Location[] locations) {
+        int n = locations.length;
+        this.locations = locations;
+        x = new int[n];
+        z = new int[n];
+        radius = new int[n];
+        minY = new int[n];
+        maxY = new int[n];
+        shape = new int[n];
+        int others = 0;
+        for (int i = 0; i < n; i++) {
+            Location l = locations[i];
+            x[i] = l.center.getX();
+            z[i] = l.center.getZ();
+            radius[i] = l.radius;
+            minY[i] = l.minY;
+            maxY[i] = l.maxY;
+            shape[i] = l.shape == Location.Shape.CIRCLE ? CIRCLE : l.shape == Location.Shape.SQUARE ? SQUARE : OTHER;
+            if (shape[i] == OTHER) others++;
+        }
+        other = new int[others];
+        for (int i = 0, k = 0; i < n; i++) {
+            if (shape[i] == OTHER) other[k++] = i;
+        }
+    }
+
+    /** Packed copy of a bucket worth scanning with the kernel, otherwise null. */
+    static PackedLocations pack(Location[] locations) {
+        return locations.length < MIN_SIZE ? null : new PackedLocations(locations);
+    }
+
+    static String describeKernel() {
+        return KERNEL.describe();
+    }
+
+    private static Kernel loadKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("locations.vector", "true"))) return new ScalarScanKernel();
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return new ScalarScanKernel();
+        try {
+            // by name, so nothing links against the incubator module unless it is there
+            return (Kernel) Class.forName("dev.locations.VectorScanKernel").getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            // built without it
+            return new ScalarScanKernel();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Throwable why = e instanceof InvocationTargetException ite ? ite.getCause() : e;
+            System.err.println("[locations] Vector API unavailable, scanning regions without it: " + why);
+            return new ScalarScanKernel();
+        }
+    }
+}
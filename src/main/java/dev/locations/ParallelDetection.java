@@ -0,0 +1,251 @@
+package dev.locations;
+
+import net.minecraft.util.Identifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Opt-in off-thread detection. The world tick only records the block
+ * positions of the players due for a check; at the end of the server tick
+ * the batches are scanned on a fork-join pool against each dimension's
+ * immutable {@link LocationGrid}, and at the start of the next tick the
+ * results are handed back on the server thread, where presence, events and
+ * announcements are updated as usual. Workers only ever see the recorded
+ * ints and the grid, never a player.
+ * <p>
+ * Everything except the scan itself is server thread only. {@code P} is
+ * whatever the caller needs to find the player again.
+ */
+public final class ParallelDetection<P> {
+    // players per fork-join leaf task
+    private static final int LEAF = 64;
+
+    private final int threads;
+    private ForkJoinPool pool;
+    private final Map<Identifier, Batch<P>> batches = new HashMap<>();
+    // batches with players recorded this tick, then in flight until applied
+    private final List<Batch<P>> pending = new ArrayList<>();
+    private ForkJoinTask<?> task;
+
+    /** Receives one result on the server thread: entry {@code index} of {@code batch}. */
+    public interface Sink<P> {
+        void accept(Batch<P> batch, int index);
+    }
+
+    /** One world's due players for the current tick, in check order. */
+    public static final class Batch<P> {
+        final Identifier dimension;
+        final int dimensionKey;
+        LocationGrid grid = LocationGrid.EMPTY_GRID;
+        Object[] players = new Object[16];
+        int[] positions = new int[48];
+        Location[] results = new Location[16];
+        int size;
+        // server thread time spent recording this batch
+        long nanos;
+
+        Batch(Identifier dimension, int dimensionKey) {
+            this.dimension = dimension;
+            this.dimensionKey = dimensionKey;
+        }
+
+        public void add(P player, int x, int y, int z) {
+            if (size == players.length) {
+                players = Arrays.copyOf(players, size * 2);
+                positions = Arrays.copyOf(positions, size * 6);
+                results = Arrays.copyOf(results, size * 2);
+            }
+            players[size] = player;
+            positions[size * 3] = x;
+            positions[size * 3 + 1] = y;
+            positions[size * 3 + 2] = z;
+            size++;
+        }
+
+        /** Adds to the server thread time reported for this batch. */
+        public void addNanos(long nanos) {
+            this.nanos += nanos;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Identifier dimension() {
+            return dimension;
+        }
+
+        public int dimensionKey() {
+            return dimensionKey;
+        }
+
+        /** The grid the batch was scanned against. */
+        public LocationGrid grid() {
+            return grid;
+        }
+
+        @SuppressWarnings("unchecked")
+        public P player(int i) {
+            return (P) players[i];
+        }
+
+        public int x(int i) {
+            return positions[i * 3];
+        }
+
+        public int y(int i) {
+            return positions[i * 3 + 1];
+        }
+
+        public int z(int i) {
+            return positions[i * 3 + 2];
+        }
+
+        /** Best match at the recorded position, or null. */
+        public Location result(int i) {
+            return results[i];
+        }
+    }
+
+    /** @param threads worker threads, 0 for one less than the available processors */
+    public ParallelDetection(int threads) {
+        this.threads = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /** True while a scan is running or its results have not been applied yet; record nothing then. */
+    public boolean busy() {
+        return task != null;
+    }
+
+    /** The batch to record a world's due players into this tick, scanned against {@code grid}. */
+    public Batch<P> batch(Identifier dimension, int dimensionKey, LocationGrid grid) {
+        Batch<P> batch = batches.computeIfAbsent(dimension, k -> new Batch<>(k, dimensionKey));
+        if (!pending.contains(batch)) {
+            batch.size = 0;
+            batch.nanos = 0;
+            pending.add(batch);
+        }
+        batch.grid = grid;
+        return batch;
+    }
+
+    /** Starts scanning everything recorded this tick. End of the server tick. */
+    public void dispatch() {
+        if (task != null || pending.isEmpty()) return;
+        if (pool == null) pool = new ForkJoinPool(threads, ParallelDetection::newThread, null, false);
+        List<Scan> scans = new ArrayList<>(pending.size());
+        for (Batch<P> batch : pending) {
+            if (batch.size > 0) scans.add(new Scan(batch, 0, batch.size));
+        }
+        task = pool.submit(() -> ForkJoinTask.invokeAll(scans));
+    }
+
+    /**
+     * Hands the finished scan's results to {@code sink}, batch by batch in
+     * check order, and returns how many there were. Does nothing while the
+     * scan is still running. Start of the server tick. Each batch counts as
+     * one scan in {@link LocationsMetrics}, timed as the server thread's
+     * share: recording plus applying.
+     */
+    public int apply(Sink<P> sink) {
+        if (task == null || !task.isDone()) return 0;
+        int applied = 0;
+        try {
+            task.join();
+            for (Batch<P> batch : pending) {
+                RegionScanEvent event = new RegionScanEvent();
+                event.begin();
+                long start = System.nanoTime();
+                // one failing result, e.g. a listener throwing, must not drop the rest
+                int failed = 0;
+                RuntimeException first = null;
+                for (int i = 0; i < batch.size; i++) {
+                    try {
+                        sink.accept(batch, i);
+                    } catch (RuntimeException e) {
+                        if (failed++ == 0) first = e;
+                    }
+                }
+                if (failed > 0) {
+                    System.err.println("[locations] Failed to apply " + failed + " detection result(s) in "
+                            + batch.dimension + ", first: " + first);
+                }
+                applied += batch.size;
+                LocationsMetrics.get().recordScan(batch.dimension, batch.size, batch.nanos + System.nanoTime() - start);
+                if (event.shouldCommit()) {
+                    event.dimension = batch.dimension.toString();
+                    event.checks = batch.size;
+                    event.commit();
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[locations] Parallel detection failed, skipping its results: " + e);
+        }
+        clear();
+        return applied;
+    }
+
+    /** Waits for a running scan to finish, without applying it. */
+    public void await() {
+        if (task != null) task.quietlyJoin();
+    }
+
+    /** Drops whatever is recorded or in flight, e.g. when a world unloads or the server stops. */
+    public void clear() {
+        // the batches are reused, so let a running scan finish writing first
+        await();
+        task = null;
+        for (Batch<P> batch : pending) {
+            Arrays.fill(batch.players, 0, batch.size, null);
+            Arrays.fill(batch.results, 0, batch.size, null);
+        }
+        pending.clear();
+    }
+
+    /** Stops the worker threads; the next dispatch starts new ones. */
+    public void shutdown() {
+        clear();
+        if (pool != null) pool.shutdownNow();
+        pool = null;
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("locations-detect-" + t.getPoolIndex());
+        return t;
+    }
+
+    // best match for a slice of one batch, split until LEAF players remain
+    private static final class Scan extends RecursiveAction {
+        private final Batch<?> batch;
+        private final int from, to;
+
+        Scan(Batch<?> batch, int from, int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Scan(batch, from, mid), new Scan(batch, mid, to));
+                return;
+            }
+            LocationGrid grid = batch.grid;
+            int[] pos = batch.positions;
+            for (int i = from; i < to; i++) {
+                batch.results[i] = grid.findBestMatch(pos[i * 3], pos[i * 3 + 1], pos[i * 3 + 2]);
+            }
+        }
+    }
+}
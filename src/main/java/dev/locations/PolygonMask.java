@@ -0,0 +1,118 @@
+package dev.locations;
+
+import java.util.Arrays;
+
+/**
+ * A polygon rasterized to one bit per block column over its bounding box,
+ * widened to whole chunks. Built once when the {@link Location} is created,
+ * so containment is a bounds check and a bit lookup. Vertices are block
+ * coordinates; a block is inside if it lies inside the polygon (even-odd
+ * rule) or an edge passes through it, so the outline walked while placing
+ * vertices is part of it.
+ */
+final class PolygonMask {
+    private static final byte MIXED = 0, ALL_OUT = 1, ALL_IN = 2;
+
+    // exact block bounds of the polygon
+    final int minX, maxX, minZ, maxZ;
+    // chunk-aligned origin and size of the mask
+    private final int originX, originZ;
+    private final int width, height;
+    private final long[] bits;
+    // per chunk: whether every column in it is inside, outside, or mixed
+    private final byte[] chunks;
+
+    PolygonMask(int[] points) {
+        int n = points.length / 2;
+        int x0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, z0 = Integer.MAX_VALUE, z1 = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            x0 = Math.min(x0, points[2 * i]);
+            x1 = Math.max(x1, points[2 * i]);
+            z0 = Math.min(z0, points[2 * i + 1]);
+            z1 = Math.max(z1, points[2 * i + 1]);
+        }
+        minX = x0;
+        maxX = x1;
+        minZ = z0;
+        maxZ = z1;
+        originX = x0 & ~15;
+        originZ = z0 & ~15;
+        width = ((x1 | 15) + 1) - originX;
+        height = ((z1 | 15) + 1) - originZ;
+        bits = new long[(int) (((long) width * height + 63) >>> 6)];
+
+        // interior: scanline crossings per row, edges counted half-open in z
+        double[] xs = new double[n];
+        for (int z = z0; z <= z1; z++) {
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                int ax = points[2 * i], az = points[2 * i + 1];
+                int bx = points[2 * ((i + 1) % n)], bz = points[2 * ((i + 1) % n) + 1];
+                if ((az <= z && z < bz) || (bz <= z && z < az)) {
+                    xs[count++] = ax + (double) (z - az) * (bx - ax) / (bz - az);
+                }
+            }
+            Arrays.sort(xs, 0, count);
+            for (int k = 0; k + 1 < count; k += 2) {
+                int from = (int) Math.ceil(xs[k]);
+                int to = (int) Math.floor(xs[k + 1]);
+                for (int x = from; x <= to; x++) set(x, z);
+            }
+        }
+        // outline, so edges and horizontal runs are inside too
+        for (int i = 0; i < n; i++) {
+            int ax = points[2 * i], az = points[2 * i + 1];
+            int bx = points[2 * ((i + 1) % n)], bz = points[2 * ((i + 1) % n) + 1];
+            int steps = Math.max(Math.abs(bx - ax), Math.abs(bz - az));
+            for (int t = 0; t <= steps; t++) {
+                double f = steps == 0 ? 0 : (double) t / steps;
+                set((int) Math.round(ax + (bx - ax) * f), (int) Math.round(az + (bz - az) * f));
+            }
+        }
+
+        int cw = width >> 4, ch = height >> 4;
+        chunks = new byte[cw * ch];
+        for (int cz = 0; cz < ch; cz++) {
+            for (int cx = 0; cx < cw; cx++) {
+                int in = 0;
+                for (int dz = 0; dz < 16; dz++) {
+                    for (int dx = 0; dx < 16; dx++) {
+                        if (get(originX + (cx << 4) + dx, originZ + (cz << 4) + dz)) in++;
+                    }
+                }
+                chunks[cz * cw + cx] = in == 0 ? ALL_OUT : in == 256 ? ALL_IN : MIXED;
+            }
+        }
+    }
+
+    private void set(int x, int z) {
+        int i = (z - originZ) * width + (x - originX);
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private boolean get(int x, int z) {
+        int i = (z - originZ) * width + (x - originX);
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    boolean contains(int x, int z) {
+        return x >= minX && x <= maxX && z >= minZ && z <= maxZ && get(x, z);
+    }
+
+    /** Whether any column of the chunk is inside; the chunk must overlap the bounds. */
+    boolean overlapsChunk(int chunkX, int chunkZ) {
+        int cx = chunkX - (originX >> 4), cz = chunkZ - (originZ >> 4);
+        return chunks[cz * (width >> 4) + cx] != ALL_OUT;
+    }
+
+    /** Blocks the position can move before the answer could change; conservative. */
+    long boundaryGap(int x, int z) {
+        long out = Math.max(Math.max((long) minX - x, (long) x - maxX), Math.max((long) minZ - z, (long) z - maxZ));
+        if (out > 0) return out - 1;
+        int cx = (x - originX) >> 4, cz = (z - originZ) >> 4;
+        if (chunks[cz * (width >> 4) + cx] == MIXED) return 0;
+        // a uniform chunk can only change once the position leaves it
+        int bx = x & 15, bz = z & 15;
+        return Math.min(Math.min(bx, 15 - bx), Math.min(bz, 15 - bz));
+    }
+}
@@ -0,0 +1,164 @@
+package dev.locations;
+
+import java.util.Arrays;
+
+/**
+ * Per-player presence: the dimension and location (null for none) a player
+ * was last seen in, their lookup cache, and the last few locations they were
+ * shown an announcement for, with the tick it happened. An open-addressing
+ * table keyed by the two halves of the player's UUID, so there are no boxed
+ * keys or entry objects. Players are removed on disconnect and the table
+ * shrinks again as they leave, so memory follows the online count rather than
+ * everyone who ever joined.
+ */
+final class PresenceTracker {
+    private static final int MIN_CAPACITY = 16;
+    // announcements remembered per player; the oldest is forgotten first
+    private static final int RECENT = 4;
+
+    private long[] msb = new long[MIN_CAPACITY];
+    private long[] lsb = new long[MIN_CAPACITY];
+    private int[] dim = new int[MIN_CAPACITY];
+    private Location[] loc = new Location[MIN_CAPACITY];
+    // RECENT entries per slot: location id (0 = unused) and server tick
+    private long[] recentId = new long[MIN_CAPACITY * RECENT];
+    private int[] recentTick = new int[MIN_CAPACITY * RECENT];
+    // non-null marks a used slot
+    private RegionCache[] cache = new RegionCache[MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    private int size;
+
+    /** The player's slot, added with no dimension and no location if new. Valid until the next add or remove. */
+    int slot(long hi, long lo) {
+        int i = find(hi, lo);
+        if (i >= 0) return i;
+        if ((size + 1) * 2 > cache.length) resize(cache.length * 2);
+        i = home(hi, lo);
+        while (cache[i] != null) i = (i + 1) & mask;
+        msb[i] = hi;
+        lsb[i] = lo;
+        dim[i] = -1;
+        loc[i] = null;
+        Arrays.fill(recentId, i * RECENT, (i + 1) * RECENT, 0L);
+        cache[i] = new RegionCache();
+        size++;
+        return i;
+    }
+
+    /** The player's slot, or -1 if they are not tracked. */
+    int find(long hi, long lo) {
+        for (int i = home(hi, lo); cache[i] != null; i = (i + 1) & mask) {
+            if (msb[i] == hi && lsb[i] == lo) return i;
+        }
+        return -1;
+    }
+
+    int dimension(int slot) {
+        return dim[slot];
+    }
+
+    Location location(int slot) {
+        return loc[slot];
+    }
+
+    RegionCache cache(int slot) {
+        return cache[slot];
+    }
+
+    void set(int slot, int dimension, Location location) {
+        dim[slot] = dimension;
+        loc[slot] = location;
+    }
+
+    /**
+     * False if the slot's player was shown {@code locationId} less than
+     * {@code cooldown} ticks before {@code now}; otherwise remembers it as
+     * shown now and returns true.
+     */
+    boolean announce(int slot, long locationId, int now, int cooldown) {
+        int base = slot * RECENT, oldest = base;
+        for (int k = base; k < base + RECENT; k++) {
+            if (recentId[k] == locationId) {
+                // subtraction keeps working when the tick counter wraps
+                if (now - recentTick[k] < cooldown) return false;
+                oldest = k;
+                break;
+            }
+            if (recentId[k] == 0 || (recentId[oldest] != 0 && recentTick[k] - recentTick[oldest] < 0)) oldest = k;
+        }
+        recentId[oldest] = locationId;
+        recentTick[oldest] = now;
+        return true;
+    }
+
+    /** Removes the player and returns the location they were in, or null. */
+    Location remove(long hi, long lo) {
+        int i = find(hi, lo);
+        if (i < 0) return null;
+        Location was = loc[i];
+        // backward-shift deletion keeps every probe chain unbroken without tombstones
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (cache[j] == null) break;
+            int k = home(msb[j], lsb[j]);
+            if (j > i ? (k <= i || k > j) : (k <= i && k > j)) {
+                move(j, i);
+                i = j;
+            }
+        }
+        cache[i] = null;
+        loc[i] = null;
+        size--;
+        if (cache.length > MIN_CAPACITY && size * 8 < cache.length) resize(cache.length / 2);
+        return was;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void move(int from, int to) {
+        msb[to] = msb[from];
+        lsb[to] = lsb[from];
+        dim[to] = dim[from];
+        loc[to] = loc[from];
+        cache[to] = cache[from];
+        System.arraycopy(recentId, from * RECENT, recentId, to * RECENT, RECENT);
+        System.arraycopy(recentTick, from * RECENT, recentTick, to * RECENT, RECENT);
+    }
+
+    private int home(long hi, long lo) {
+        long h = (hi ^ lo) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMsb = msb, oldLsb = lsb;
+        int[] oldDim = dim;
+        Location[] oldLoc = loc;
+        RegionCache[] oldCache = cache;
+        long[] oldRecentId = recentId;
+        int[] oldRecentTick = recentTick;
+        msb = new long[capacity];
+        lsb = new long[capacity];
+        dim = new int[capacity];
+        loc = new Location[capacity];
+        cache = new RegionCache[capacity];
+        recentId = new long[capacity * RECENT];
+        recentTick = new int[capacity * RECENT];
+        mask = capacity - 1;
+        for (int j = 0; j < oldCache.length; j++) {
+            if (oldCache[j] == null) continue;
+            int i = home(oldMsb[j], oldLsb[j]);
+            while (cache[i] != null) i = (i + 1) & mask;
+            msb[i] = oldMsb[j];
+            lsb[i] = oldLsb[j];
+            dim[i] = oldDim[j];
+            loc[i] = oldLoc[j];
+            cache[i] = oldCache[j];
+            System.arraycopy(oldRecentId, j * RECENT, recentId, i * RECENT, RECENT);
+            System.arraycopy(oldRecentTick, j * RECENT, recentTick, i * RECENT, RECENT);
+        }
+    }
+}
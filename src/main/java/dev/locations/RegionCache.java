@@ -0,0 +1,42 @@
+package dev.locations;
+
+/**
+ * Per-player memo of the last region lookup. The answer stays valid while the
+ * player is within {@code safe} blocks (in 3D) of where it was computed and the
+ * dimension still publishes the same (immutable) grid.
+ */
+public final class RegionCache {
+    private LocationGrid grid;
+    private int anchorX;
+    private int anchorY;
+    private int anchorZ;
+    private long safeSq = -1; // -1 = empty
+    private Location result;
+
+    boolean isFresh(LocationGrid grid, int x, int y, int z) {
+        if (safeSq < 0 || this.grid != grid) return false;
+        long dx = x - anchorX;
+        long dy = (long) y - anchorY;
+        long dz = z - anchorZ;
+        return dx * dx + dy * dy + dz * dz <= safeSq;
+    }
+
+    void update(LocationGrid grid, int x, int y, int z, long safe, Location result) {
+        this.grid = grid;
+        this.anchorX = x;
+        this.anchorY = y;
+        this.anchorZ = z;
+        this.safeSq = safe * safe;
+        this.result = result;
+    }
+
+    public Location result() {
+        return result;
+    }
+
+    public void invalidate() {
+        safeSq = -1;
+        grid = null;
+        result = null;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.locations;
+
+import net.minecraft.util.Identifier;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Enter detection without any Minecraft entity types: given a player's id,
+ * the dimension they are in with its chunk candidates and their block position, reports the
+ * location they just entered. Used by the world tick handler and by the
+ * headless load simulator.
+ * <p>
+ * With a hysteresis margin, a player counts as still in a location until
+ * they are more than that many blocks outside it, and an overlapping
+ * location of the same or lower nesting rank does not take over before
+ * then, so walking along an edge or through an overlap doesn't flip
+ * back and forth. Moving into a more deeply nested location still switches
+ * at once.
+ */
+public final class RegionDetector {
+    private final PresenceTracker presence = new PresenceTracker();
+    private final Map<Identifier, Integer> dimensionKeys = new HashMap<>();
+    // outcome of the last check besides the entered location
+    private Location previous;
+    private Location inside;
+    private int lastSlot = -1;
+    private int margin;
+
+    /** Blocks a player must get outside a location before they leave it; 0 disables hysteresis. */
+    public void setHysteresis(int blocks) {
+        margin = Math.max(0, blocks);
+    }
+
+    /** Small int standing for a dimension in {@link #check}; look it up once per tick, not per player. */
+    public int dimensionKey(Identifier dimension) {
+        return dimensionKeys.computeIfAbsent(dimension, k -> dimensionKeys.size());
+    }
+
+    /** Whether the player was in a location at their last check, in any dimension. */
+    public boolean inLocation(UUID player) {
+        int slot = presence.find(player.getMostSignificantBits(), player.getLeastSignificantBits());
+        return slot >= 0 && presence.location(slot) != null;
+    }
+
+    /**
+     * The location the player entered since their last check, or null.
+     * Presence is by location id and dimension, so a rename is not an entry
+     * and the same name in another dimension is. Stepping out of a nested
+     * location back into one that encloses it is not an entry either.
+     */
+    public Location check(UUID player, int dimension, ChunkCandidates chunks, int x, int y, int z) {
+        int slot = presence.slot(player.getMostSignificantBits(), player.getLeastSignificantBits());
+        // cached answer while the player stays clear of every boundary
+        Location current = chunks.findBestMatch(x, y, z, presence.cache(slot));
+        return moveTo(slot, dimension, chunks.grid(), current, x, y, z);
+    }
+
+    /**
+     * Same as {@link #check} for a best match found elsewhere, e.g. by
+     * {@link ParallelDetection} against the dimension's grid.
+     */
+    public Location record(UUID player, int dimension, LocationGrid grid, Location current, int x, int y, int z) {
+        int slot = presence.slot(player.getMostSignificantBits(), player.getLeastSignificantBits());
+        return moveTo(slot, dimension, grid, current, x, y, z);
+    }
+
+    private Location moveTo(int slot, int dimension, LocationGrid grid, Location current, int x, int y, int z) {
+        lastSlot = slot;
+        Location prev = presence.location(slot);
+        if (margin > 0 && prev != null && current != prev && dimension == presence.dimension(slot)
+                && (current == null || LocationGrid.rank(current) <= LocationGrid.rank(prev))
+                && grid.holds(prev) && prev.near(x, y, z, margin)) {
+            // not far enough out of where they were yet
+            current = prev;
+        }
+
+        boolean moved = dimension != presence.dimension(slot)
+                || (current == null ? prev != null : prev == null || prev.id != current.id);
+        presence.set(slot, dimension, current);
+        previous = moved ? prev : null;
+        inside = current;
+        return moved && current != null && (prev == null || !prev.isWithin(current)) ? current : null;
+    }
+
+    /**
+     * Where the player was before the last {@link #check} if that changed,
+     * else null. They left it and every enclosing location that does not
+     * also enclose {@link #inside()}.
+     */
+    public Location previous() {
+        return previous;
+    }
+
+    /** The location the player is in after the last {@link #check}, or null. */
+    public Location inside() {
+        return inside;
+    }
+
+    /**
+     * Whether to announce the location entered in the last {@link #check}
+     * at server tick {@code now}: false if this player was shown it less than
+     * {@code cooldown} ticks ago. Remembers the announcement if true.
+     */
+    public boolean announce(Location entered, int now, int cooldown) {
+        if (cooldown <= 0 || lastSlot < 0) return true;
+        return presence.announce(lastSlot, entered.id, now, cooldown);
+    }
+
+    /** Forgets the player entirely, e.g. on disconnect, and returns the location they were in. */
+    public Location forget(UUID player) {
+        lastSlot = -1;
+        return presence.remove(player.getMostSignificantBits(), player.getLeastSignificantBits());
+    }
+
+    /** Players currently tracked. */
+    public int tracked() {
+        return presence.size();
+    }
+}
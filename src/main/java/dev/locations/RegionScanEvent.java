@@ -0,0 +1,22 @@
+package dev.locations;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One world tick of region detection, for JDK Flight Recorder. */
+@Name("dev.locations.RegionScan")
+@Label("Region Scan")
+@Category({"Locations"})
+@Description("Players checked against location regions during one world tick")
+@StackTrace(false)
+final class RegionScanEvent extends Event {
+    @Label("Dimension")
+    String dimension;
+
+    @Label("Players Checked")
+    int checks;
+}
@@ -0,0 +1,62 @@
+package dev.locations;
+
+/**
+ * {@link PackedLocations.Kernel} as plain loops over the packed arrays, the
+ * default when the Vector API is not built in or not available. It still
+ * saves following each {@link Location} to its {@code BlockPos}, and gives
+ * {@link VectorScanKernel} a reference over the same data.
+ */
+final class ScalarScanKernel implements PackedLocations.Kernel {
+    @Override
+    public long contains(PackedLocations p, int from, int x, int y, int z) {
+        int end = Math.min(p.locations.length, from + 64);
+        long bits = 0;
+        for (int i = from; i < end; i++) {
+            int shape = p.shape[i];
+            if (shape == PackedLocations.OTHER || y < p.minY[i] || y > p.maxY[i]) continue;
+            long dx = Math.abs((long) x - p.x[i]);
+            long dz = Math.abs((long) z - p.z[i]);
+            long r = p.radius[i];
+            boolean in = shape == PackedLocations.SQUARE
+                    ? dx <= r && dz <= r
+                    : dx * dx + dz * dz <= r * r;
+            if (in) bits |= 1L << (i - from);
+        }
+        return bits;
+    }
+
+    @Override
+    public long minGap(PackedLocations p, int x, int y, int z, long gap) {
+        for (int i = 0; i < p.locations.length; i++) {
+            int shape = p.shape[i];
+            if (shape == PackedLocations.OTHER) continue;
+            long dx = Math.abs((long) x - p.x[i]);
+            long dz = Math.abs((long) z - p.z[i]);
+            long r = p.radius[i];
+            long g;
+            if (shape == PackedLocations.SQUARE) {
+                long c = Math.max(dx, dz);
+                g = c <= r ? r - c : c - r - 1;
+            } else {
+                double d = Math.sqrt((double) (dx * dx + dz * dz));
+                g = Math.max(0, d <= r
+                        ? (long) Math.floor(r - d - 1e-9)
+                        : (long) Math.ceil(d - r - 1e-9) - 1);
+            }
+            int lo = p.minY[i], hi = p.maxY[i];
+            if (lo != Integer.MIN_VALUE || hi != Integer.MAX_VALUE) {
+                long vertical = y < lo ? (long) lo - y - 1
+                        : y > hi ? (long) y - hi - 1
+                        : Math.min((long) y - lo, (long) hi - y);
+                g = Math.min(g, vertical);
+            }
+            gap = Math.min(gap, g);
+        }
+        return gap;
+    }
+
+    @Override
+    public String describe() {
+        return "scalar";
+    }
+}
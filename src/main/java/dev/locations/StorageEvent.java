@@ -0,0 +1,27 @@
+package dev.locations;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A locations load, snapshot write or journal append, for JDK Flight Recorder. */
+@Name("dev.locations.Storage")
+@Label("Locations Storage")
+@Category({"Locations"})
+@Description("Reading or writing the locations files")
+@StackTrace(false)
+final class StorageEvent extends Event {
+    @Label("Operation")
+    String operation; // "load", "snapshot" or "journal"
+
+    @Label("Dimension")
+    String dimension;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,110 @@
+package dev.locations;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PackedLocations.Kernel} on the JDK Vector API. Lanes are doubles,
+ * which hold every int coordinate, radius and squared distance exactly, so
+ * each lane computes bit for bit what {@link Location} does. Only
+ * {@link PackedLocations} refers to this class, by name, after checking the
+ * incubator module is present.
+ */
+final class VectorScanKernel implements PackedLocations.Kernel {
+    private static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+    // ints with the same lane count, widened to doubles after loading
+    private static final VectorSpecies<Integer> I =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(D.vectorBitSize() / 2));
+    private static final double EPS = 1e-9;
+
+    VectorScanKernel() {
+        if (D.length() < 2) throw new UnsupportedOperationException("only " + D.length() + " double lane");
+    }
+
+    private static DoubleVector load(int[] a, int i) {
+        return (DoubleVector) IntVector.fromArray(I, a, i).convertShape(VectorOperators.I2D, D, 0);
+    }
+
+    @Override
+    public long contains(PackedLocations p, int from, int x, int y, int z) {
+        int end = Math.min(p.locations.length, from + 64);
+        long bits = 0;
+        int i = from;
+        for (int bound = from + D.loopBound(end - from); i < bound; i += D.length()) {
+            DoubleVector dx = load(p.x, i).sub(x).abs();
+            DoubleVector dz = load(p.z, i).sub(z).abs();
+            DoubleVector r = load(p.radius, i);
+            IntVector shape = IntVector.fromArray(I, p.shape, i);
+            VectorMask<Double> square = shape.compare(VectorOperators.EQ, PackedLocations.SQUARE).cast(D);
+            VectorMask<Double> circle = shape.compare(VectorOperators.EQ, PackedLocations.CIRCLE).cast(D);
+
+            VectorMask<Double> in = dx.max(dz).compare(VectorOperators.LE, r).and(square)
+                    .or(dx.mul(dx).add(dz.mul(dz)).compare(VectorOperators.LE, r.mul(r)).and(circle))
+                    .and(load(p.minY, i).compare(VectorOperators.LE, y))
+                    .and(load(p.maxY, i).compare(VectorOperators.GE, y));
+            bits |= in.toLong() << (i - from);
+        }
+        for (; i < end; i++) {
+            if (p.shape[i] != PackedLocations.OTHER && p.locations[i].contains(x, y, z)) bits |= 1L << (i - from);
+        }
+        return bits;
+    }
+
+    @Override
+    public long minGap(PackedLocations p, int x, int y, int z, long gap) {
+        int n = p.locations.length;
+        int i = 0;
+        DoubleVector best = DoubleVector.broadcast(D, gap);
+        for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+            DoubleVector dx = load(p.x, i).sub(x).abs();
+            DoubleVector dz = load(p.z, i).sub(z).abs();
+            DoubleVector r = load(p.radius, i);
+            IntVector shape = IntVector.fromArray(I, p.shape, i);
+            VectorMask<Double> square = shape.compare(VectorOperators.EQ, PackedLocations.SQUARE).cast(D);
+            VectorMask<Double> other = shape.compare(VectorOperators.EQ, PackedLocations.OTHER).cast(D);
+
+            // squares: chebyshev distance to the edge
+            DoubleVector c = dx.max(dz);
+            DoubleVector squareGap = r.sub(c).blend(c.sub(r).sub(1), c.compare(VectorOperators.GT, r));
+
+            // circles: floor(r - d - eps) inside, ceil(d - r - eps) - 1 outside, at least 0.
+            // Truncation stands in for floor: they differ only below 0, which clamps anyway.
+            DoubleVector d = dx.mul(dx).add(dz.mul(dz)).sqrt();
+            DoubleVector inside = trunc(r.sub(d).sub(EPS));
+            DoubleVector out = d.sub(r).sub(EPS);
+            DoubleVector t = trunc(out);
+            DoubleVector ceil = t.add(1, t.compare(VectorOperators.LT, out));
+            DoubleVector circleGap = inside.blend(ceil.sub(1), d.compare(VectorOperators.GT, r)).max(0);
+
+            DoubleVector lanes = circleGap.blend(squareGap, square);
+
+            // vertical bounds; unbounded sides are far beyond any gap that matters
+            DoubleVector yv = DoubleVector.broadcast(D, y);
+            DoubleVector lo = load(p.minY, i), hi = load(p.maxY, i);
+            DoubleVector vertical = yv.sub(lo).min(hi.sub(yv))
+                    .blend(lo.sub(yv).sub(1), yv.compare(VectorOperators.LT, lo))
+                    .blend(yv.sub(hi).sub(1), yv.compare(VectorOperators.GT, hi));
+
+            best = best.min(lanes.min(vertical).blend(Double.POSITIVE_INFINITY, other));
+        }
+        long min = (long) best.reduceLanes(VectorOperators.MIN);
+        for (; i < n; i++) {
+            if (p.shape[i] != PackedLocations.OTHER) min = Math.min(min, p.locations[i].boundaryGap(x, y, z));
+        }
+        return min;
+    }
+
+    private static DoubleVector trunc(DoubleVector v) {
+        return (DoubleVector) ((LongVector) v.convert(VectorOperators.D2L, 0)).convert(VectorOperators.L2D, 0);
+    }
+
+    @Override
+    public String describe() {
+        return "vector (" + D.length() + " lanes)";
+    }
+}